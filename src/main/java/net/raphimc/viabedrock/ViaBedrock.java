@@ -19,6 +19,7 @@ package net.raphimc.viabedrock;
 
 import net.raphimc.viabedrock.api.http.ResourcePackHttpServer;
 import net.raphimc.viabedrock.api.io.LevelDB;
+import net.raphimc.viabedrock.api.model.ResourcePackStore;
 import net.raphimc.viabedrock.platform.ViaBedrockPlatform;
 
 import java.net.InetSocketAddress;
@@ -33,6 +34,7 @@ public class ViaBedrock {
     private static ViaBedrockConfig config;
     private static ResourcePackHttpServer resourcePackServer;
     private static LevelDB blobCache;
+    private static final ResourcePackStore resourcePackStore = new ResourcePackStore();
 
     private ViaBedrock() {
     }
@@ -82,4 +84,8 @@ public class ViaBedrock {
         return ViaBedrock.blobCache;
     }
 
+    public static ResourcePackStore getResourcePackStore() {
+        return ViaBedrock.resourcePackStore;
+    }
+
 }
@@ -32,7 +32,11 @@ public class ViaBedrockConfig extends Config implements net.raphimc.viabedrock.p
     private String resourcePackHost;
     private int resourcePackPort;
     private String resourcePackUrl;
+    private long convertedPackCacheSize;
+    private int convertedPackCompressionLevel;
+    private int resourcePackDownloadWindow;
     private PackCacheMode packCacheMode;
+    private LightingMode lightingMode;
 
     public ViaBedrockConfig(final File configFile) {
         super(configFile);
@@ -50,7 +54,11 @@ public class ViaBedrockConfig extends Config implements net.raphimc.viabedrock.p
         this.resourcePackHost = this.getString("resource-pack-host", "127.0.0.1");
         this.resourcePackPort = this.getInt("resource-pack-port", 0);
         this.resourcePackUrl = this.getString("resource-pack-url", "");
+        this.convertedPackCacheSize = Math.max(this.getInt("converted-pack-cache-size", 256), 0) * 1024L * 1024L;
+        this.convertedPackCompressionLevel = Math.min(Math.max(this.getInt("converted-pack-compression-level", 6), 0), 9);
+        this.resourcePackDownloadWindow = Math.max(this.getInt("resource-pack-download-window", 8), 1);
         this.packCacheMode = PackCacheMode.byName(this.getString("pack-cache", "disk"));
+        this.lightingMode = LightingMode.byName(this.getString("lighting-mode", "full-bright"));
     }
 
     @Override
@@ -92,9 +100,29 @@ public class ViaBedrockConfig extends Config implements net.raphimc.viabedrock.p
         return this.resourcePackUrl;
     }
 
+    @Override
+    public long getConvertedPackCacheSize() {
+        return this.convertedPackCacheSize;
+    }
+
+    @Override
+    public int getConvertedPackCompressionLevel() {
+        return this.convertedPackCompressionLevel;
+    }
+
+    @Override
+    public int getResourcePackDownloadWindow() {
+        return this.resourcePackDownloadWindow;
+    }
+
     @Override
     public PackCacheMode getPackCacheMode() {
         return this.packCacheMode;
     }
 
+    @Override
+    public LightingMode getLightingMode() {
+        return this.lightingMode;
+    }
+
 }
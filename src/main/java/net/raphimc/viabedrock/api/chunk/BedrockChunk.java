@@ -20,15 +20,21 @@ package net.raphimc.viabedrock.api.chunk;
 import com.viaversion.viaversion.api.minecraft.Position;
 import com.viaversion.viaversion.api.minecraft.blockentity.BlockEntity;
 import com.viaversion.viaversion.api.minecraft.chunks.Chunk1_18;
+import com.viaversion.viaversion.libs.fastutil.ints.Int2ObjectMap;
+import com.viaversion.viaversion.libs.fastutil.ints.Int2ObjectOpenHashMap;
 import com.viaversion.viaversion.libs.opennbt.tag.builtin.CompoundTag;
 import net.raphimc.viabedrock.api.chunk.section.BedrockChunkSection;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 public class BedrockChunk extends Chunk1_18 {
 
     private boolean requestSubChunks = false;
+    private boolean sentToClient = false;
+    private final BitSet clientSections = new BitSet(); // Sections the client holds non air blocks for
+    private final Int2ObjectMap<int[]> clientSectionSnapshots = new Int2ObjectOpenHashMap<>(); // Java block states the client holds for sections which are about to be replaced
 
     public BedrockChunk(final int x, final int z, final BedrockChunkSection[] sections) {
         this(x, z, sections, new CompoundTag(), new ArrayList<>());
@@ -51,6 +57,38 @@ public class BedrockChunk extends Chunk1_18 {
         this.requestSubChunks = requestSubChunks;
     }
 
+    public boolean isSentToClient() {
+        return this.sentToClient;
+    }
+
+    public void setSentToClient(final boolean sentToClient) {
+        this.sentToClient = sentToClient;
+    }
+
+    public boolean hasClientSection(final int idx) {
+        return this.clientSections.get(idx);
+    }
+
+    public void setClientSection(final int idx, final boolean hasBlocks) {
+        this.clientSections.set(idx, hasBlocks);
+    }
+
+    public int[] getClientSectionSnapshot(final int idx) {
+        return this.clientSectionSnapshots.get(idx);
+    }
+
+    public void setClientSectionSnapshot(final int idx, final int[] blockStates) {
+        if (blockStates != null) {
+            this.clientSectionSnapshots.put(idx, blockStates);
+        } else {
+            this.clientSectionSnapshots.remove(idx);
+        }
+    }
+
+    public void clearClientSectionSnapshots() {
+        this.clientSectionSnapshots.clear();
+    }
+
     public BedrockBlockEntity getBlockEntityAt(final Position position) {
         for (BlockEntity blockEntity : this.blockEntities) {
             final BedrockBlockEntity bedrockBlockEntity = (BedrockBlockEntity) blockEntity;
@@ -30,14 +30,30 @@ public class BlockStateSanitizer {
     private final Map<String, Map<String, Set<Object>>> allowedPropertyValues = new HashMap<>();
 
     public BlockStateSanitizer(final List<BedrockBlockState> blockStates) {
-        for (BedrockBlockState blockState : blockStates) {
-            final String identifier = blockState.blockStateTag().<StringTag>get("name").getValue();
-            final CompoundTag statesTag = blockState.blockStateTag().get("states");
+        this.addBlockStates(blockStates);
+    }
 
-            final Map<String, Set<Object>> propertyValues = this.allowedPropertyValues.computeIfAbsent(identifier, k -> new HashMap<>());
-            for (Map.Entry<String, Tag> entry : statesTag.entrySet()) {
-                propertyValues.computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>()).add(entry.getValue().getValue());
+    /**
+     * Creates a sanitizer which additionally allows the given property values.<br>
+     * The base sanitizer is not modified.
+     *
+     * @param base                    The base sanitizer
+     * @param additionalPropertyValues The additional allowed property values by block identifier
+     */
+    public BlockStateSanitizer(final BlockStateSanitizer base, final Map<String, Map<String, Set<Object>>> additionalPropertyValues) {
+        this.allowedPropertyValues.putAll(base.allowedPropertyValues);
+        for (Map.Entry<String, Map<String, Set<Object>>> entry : additionalPropertyValues.entrySet()) {
+            final Map<String, Set<Object>> propertyValues = new HashMap<>();
+            final Map<String, Set<Object>> basePropertyValues = base.allowedPropertyValues.get(entry.getKey());
+            if (basePropertyValues != null) { // Copy the entry which is about to be modified
+                for (Map.Entry<String, Set<Object>> baseEntry : basePropertyValues.entrySet()) {
+                    propertyValues.put(baseEntry.getKey(), new LinkedHashSet<>(baseEntry.getValue()));
+                }
+            }
+            for (Map.Entry<String, Set<Object>> propertyEntry : entry.getValue().entrySet()) {
+                propertyValues.computeIfAbsent(propertyEntry.getKey(), k -> new LinkedHashSet<>()).addAll(propertyEntry.getValue());
             }
+            this.allowedPropertyValues.put(entry.getKey(), propertyValues);
         }
     }
 
@@ -85,4 +101,16 @@ public class BlockStateSanitizer {
         }
     }
 
+    private void addBlockStates(final List<BedrockBlockState> blockStates) {
+        for (BedrockBlockState blockState : blockStates) {
+            final String identifier = blockState.blockStateTag().<StringTag>get("name").getValue();
+            final CompoundTag statesTag = blockState.blockStateTag().get("states");
+
+            final Map<String, Set<Object>> propertyValues = this.allowedPropertyValues.computeIfAbsent(identifier, k -> new HashMap<>());
+            for (Map.Entry<String, Tag> entry : statesTag.entrySet()) {
+                propertyValues.computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>()).add(entry.getValue().getValue());
+            }
+        }
+    }
+
 }
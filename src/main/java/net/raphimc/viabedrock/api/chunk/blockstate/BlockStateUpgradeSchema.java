@@ -19,15 +19,15 @@ package net.raphimc.viabedrock.api.chunk.blockstate;
 
 import com.viaversion.viaversion.libs.opennbt.tag.builtin.CompoundTag;
 import com.viaversion.viaversion.libs.opennbt.tag.builtin.IntTag;
+import com.viaversion.viaversion.libs.opennbt.tag.builtin.StringTag;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Consumer;
+import java.util.*;
 
 public abstract class BlockStateUpgradeSchema {
 
     private final int version;
-    protected final List<Consumer<CompoundTag>> actions = new ArrayList<>();
+    private final List<UpgradeAction> globalActions = new ArrayList<>();
+    private final Map<String, List<UpgradeAction>> actions = new HashMap<>(); // Block identifier -> actions
 
     public BlockStateUpgradeSchema(final int version) {
         this.version = version;
@@ -43,13 +43,7 @@ public abstract class BlockStateUpgradeSchema {
             return;
         }
 
-        try {
-            for (Consumer<CompoundTag> action : this.actions) {
-                action.accept(tag);
-            }
-        } catch (JsonBlockStateUpgradeSchema.StopUpgrade ignored) {
-        }
-
+        this.applyActions(tag);
         tag.put("version", new IntTag(this.version));
     }
 
@@ -57,22 +51,54 @@ public abstract class BlockStateUpgradeSchema {
         return this.version;
     }
 
-    protected static final class StopUpgrade extends RuntimeException {
+    /**
+     * @return The block identifiers this schema has actions for
+     */
+    public Set<String> identifiers() {
+        return Collections.unmodifiableSet(this.actions.keySet());
+    }
 
-        public static final StopUpgrade INSTANCE = new StopUpgrade();
+    /**
+     * @return If this schema has actions which apply to every block identifier
+     */
+    public boolean hasGlobalActions() {
+        return !this.globalActions.isEmpty();
+    }
 
-        StopUpgrade() {
+    /**
+     * Applies the actions of this schema without checking or updating the version of the tag.
+     *
+     * @param tag The block state tag
+     */
+    void applyActions(final CompoundTag tag) {
+        for (UpgradeAction action : this.globalActions) {
+            if (action.apply(tag)) return;
         }
 
-        @Override
-        public String toString() {
-            return "";
+        final List<UpgradeAction> actions = this.actions.get(tag.<StringTag>get("name").getValue());
+        if (actions != null) {
+            for (UpgradeAction action : actions) {
+                if (action.apply(tag)) return;
+            }
         }
+    }
 
-        @Override
-        public synchronized Throwable fillInStackTrace() {
-            return this;
-        }
+    protected void addGlobalAction(final UpgradeAction action) {
+        this.globalActions.add(action);
+    }
+
+    protected void addAction(final String identifier, final UpgradeAction action) {
+        this.actions.computeIfAbsent(identifier, k -> new ArrayList<>()).add(action);
+    }
+
+    @FunctionalInterface
+    protected interface UpgradeAction {
+
+        /**
+         * @param tag The block state tag
+         * @return True if the remaining actions of the schema should be skipped
+         */
+        boolean apply(final CompoundTag tag);
 
     }
 
@@ -19,19 +19,22 @@ package net.raphimc.viabedrock.api.chunk.blockstate;
 
 import com.viaversion.viaversion.libs.gson.JsonObject;
 import com.viaversion.viaversion.libs.opennbt.tag.builtin.CompoundTag;
+import com.viaversion.viaversion.libs.opennbt.tag.builtin.IntTag;
+import com.viaversion.viaversion.libs.opennbt.tag.builtin.StringTag;
 import com.viaversion.viaversion.util.GsonUtil;
 import net.raphimc.viabedrock.ViaBedrock;
 import net.raphimc.viabedrock.api.model.BedrockBlockState;
 import net.raphimc.viabedrock.api.util.FileSystemUtil;
 
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import java.util.logging.Level;
 
 public class BlockStateUpgrader {
 
     private final List<BlockStateUpgradeSchema> schemas = new ArrayList<>();
+    private final Map<String, int[]> schemaIndices = new HashMap<>(); // Block identifier -> indices of the schemas which have actions for it
+    private int[] globalSchemaIndices = new int[0];
 
     public BlockStateUpgrader() {
         this.schemas.add(new ValTagBlockStateUpgradeSchema());
@@ -45,14 +48,63 @@ public class BlockStateUpgrader {
             ViaBedrock.getPlatform().getLogger().log(Level.SEVERE, "Failed to load block state upgrade schema", e);
             this.schemas.clear();
         }
+        this.schemas.sort(Comparator.comparingInt(BlockStateUpgradeSchema::version));
+
+        // Build a dispatch table, so that upgrading a block state only visits the schemas which can change it
+        final Map<String, List<Integer>> schemaIndices = new HashMap<>();
+        final List<Integer> globalSchemaIndices = new ArrayList<>();
+        for (int i = 0; i < this.schemas.size(); i++) {
+            final int index = i;
+            final BlockStateUpgradeSchema schema = this.schemas.get(index);
+            if (schema.hasGlobalActions()) {
+                globalSchemaIndices.add(index);
+                schemaIndices.values().forEach(indices -> indices.add(index));
+            }
+            for (String identifier : schema.identifiers()) {
+                final List<Integer> indices = schemaIndices.computeIfAbsent(identifier, k -> new ArrayList<>(globalSchemaIndices));
+                if (indices.isEmpty() || indices.get(indices.size() - 1) != index) {
+                    indices.add(index);
+                }
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : schemaIndices.entrySet()) {
+            this.schemaIndices.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        this.globalSchemaIndices = globalSchemaIndices.stream().mapToInt(Integer::intValue).toArray();
     }
 
     public void upgradeToLatest(final CompoundTag tag) {
         BedrockBlockState.sanitizeName(tag);
 
-        for (BlockStateUpgradeSchema schema : this.schemas) {
-            schema.upgrade(tag);
+        final IntTag versionTag = tag.get("version");
+        final int version = versionTag != null ? versionTag.asInt() : 0;
+        if (version < 0) {
+            return;
+        }
+
+        int schemaIndex = 0;
+        while (schemaIndex < this.schemas.size() && this.schemas.get(schemaIndex).version() < version) {
+            schemaIndex++;
         }
+        if (schemaIndex >= this.schemas.size()) {
+            return;
+        }
+
+        while (true) { // The block identifier can change after every schema
+            final int[] indices = this.schemaIndices.getOrDefault(tag.<StringTag>get("name").getValue(), this.globalSchemaIndices);
+            int nextIndex = Arrays.binarySearch(indices, schemaIndex);
+            if (nextIndex < 0) {
+                nextIndex = -nextIndex - 1;
+            }
+            if (nextIndex >= indices.length) {
+                break;
+            }
+
+            this.schemas.get(indices[nextIndex]).applyActions(tag);
+            schemaIndex = indices[nextIndex] + 1;
+        }
+
+        tag.put("version", new IntTag(this.schemas.get(this.schemas.size() - 1).version()));
     }
 
 }
@@ -95,10 +95,7 @@ public class JsonBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
                     }
                 }
 
-                this.actions.add(tag -> {
-                    final String name = tag.<StringTag>get("name").getValue();
-                    if (!name.equals(identifier)) return;
-
+                this.addAction(identifier, tag -> {
                     if (tag.get("states") instanceof CompoundTag) {
                         final CompoundTag states = tag.get("states");
 
@@ -127,10 +124,12 @@ public class JsonBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
                                 }
                                 tag.put("states", newStates);
 
-                                throw StopUpgrade.INSTANCE;
+                                return true;
                             }
                         }
                     }
+
+                    return false;
                 });
             }
         }
@@ -143,10 +142,7 @@ public class JsonBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
                     mappings.put(mappingEntry.getKey(), remappedPropertyValuesLookup.get(mappingEntry.getValue().getAsString()));
                 }
 
-                this.actions.add(tag -> {
-                    final String name = tag.<StringTag>get("name").getValue();
-                    if (!name.equals(identifier)) return;
-
+                this.addAction(identifier, tag -> {
                     if (tag.get("states") instanceof CompoundTag) {
                         final CompoundTag states = tag.get("states");
 
@@ -162,6 +158,8 @@ public class JsonBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
                             }
                         }
                     }
+
+                    return false;
                 });
             }
         }
@@ -174,10 +172,7 @@ public class JsonBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
                     mappings.put(mappingEntry.getKey(), mappingEntry.getValue().getAsString());
                 }
 
-                this.actions.add(tag -> {
-                    final String name = tag.<StringTag>get("name").getValue();
-                    if (!name.equals(identifier)) return;
-
+                this.addAction(identifier, tag -> {
                     if (tag.get("states") instanceof CompoundTag) {
                         final CompoundTag states = tag.get("states");
 
@@ -188,6 +183,8 @@ public class JsonBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
                             }
                         }
                     }
+
+                    return false;
                 });
             }
         }
@@ -200,10 +197,7 @@ public class JsonBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
                     toRemove.add(toRemoveEntry.getAsString());
                 }
 
-                this.actions.add(tag -> {
-                    final String name = tag.<StringTag>get("name").getValue();
-                    if (!name.equals(identifier)) return;
-
+                this.addAction(identifier, tag -> {
                     if (tag.get("states") instanceof CompoundTag) {
                         final CompoundTag states = tag.get("states");
 
@@ -211,6 +205,8 @@ public class JsonBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
                             states.remove(property);
                         }
                     }
+
+                    return false;
                 });
             }
         }
@@ -223,10 +219,7 @@ public class JsonBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
                     toAdd.add(new Pair<>(toAddEntry.getKey(), this.getValue(toAddEntry.getValue().getAsJsonObject())));
                 }
 
-                this.actions.add(tag -> {
-                    final String name = tag.<StringTag>get("name").getValue();
-                    if (!name.equals(identifier)) return;
-
+                this.addAction(identifier, tag -> {
                     if (tag.get("states") instanceof CompoundTag) {
                         final CompoundTag states = tag.get("states");
 
@@ -234,22 +227,22 @@ public class JsonBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
                             states.put(property.key(), NbtUtil.createTag(property.value()));
                         }
                     }
+
+                    return false;
                 });
             }
         }
         if (jsonObject.has("renamedIds")) {
             final JsonObject renamedIds = jsonObject.get("renamedIds").getAsJsonObject();
-            final Map<String, String> mappings = new HashMap<>();
             for (Map.Entry<String, JsonElement> mappingEntry : renamedIds.entrySet()) {
-                mappings.put(mappingEntry.getKey().toLowerCase(Locale.ROOT), mappingEntry.getValue().getAsString().toLowerCase(Locale.ROOT));
-            }
+                final String identifier = mappingEntry.getKey().toLowerCase(Locale.ROOT);
+                final String newName = mappingEntry.getValue().getAsString().toLowerCase(Locale.ROOT);
 
-            this.actions.add(tag -> {
-                final String name = tag.<StringTag>get("name").getValue();
-                if (!mappings.containsKey(name)) return;
-
-                tag.put("name", new StringTag(mappings.get(name)));
-            });
+                this.addAction(identifier, tag -> {
+                    tag.put("name", new StringTag(newName));
+                    return false;
+                });
+            }
         }
     }
 
@@ -30,17 +30,17 @@ public class ValTagBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
     public ValTagBlockStateUpgradeSchema() {
         super(1);
 
-        this.actions.add(tag -> {
+        this.addGlobalAction(tag -> {
             if (tag.get("val") instanceof ShortTag) {
                 final String name = tag.<StringTag>get("name").getValue();
                 if (!BedrockProtocol.MAPPINGS.getBedrockLegacyBlocks().containsKey(name)) {
                     ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing block " + name + " in val tag block state upgrade schema");
-                    return;
+                    return false;
                 }
                 final int id = BedrockProtocol.MAPPINGS.getBedrockLegacyBlocks().get(name);
 
                 final short metadata = tag.<ShortTag>remove("val").asShort();
-                if (metadata < 0 || metadata > 63) return;
+                if (metadata < 0 || metadata > 63) return false;
 
                 BedrockBlockState blockState = BedrockProtocol.MAPPINGS.getBedrockLegacyBlockStates().get(id << 6 | metadata & 63);
                 if (blockState == null) {
@@ -50,8 +50,10 @@ public class ValTagBlockStateUpgradeSchema extends BlockStateUpgradeSchema {
 
                 tag.put("states", blockState.blockStateTag().get("states").copy());
 
-                throw StopUpgrade.INSTANCE;
+                return true;
             }
+
+            return false;
         });
     }
 
@@ -0,0 +1,572 @@
+/*
+ * This file is part of ViaBedrock - https://github.com/RaphiMC/ViaBedrock
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viabedrock.api.chunk.light;
+
+import com.viaversion.viaversion.api.minecraft.chunks.ChunkSection;
+import com.viaversion.viaversion.api.minecraft.chunks.DataPalette;
+import com.viaversion.viaversion.api.minecraft.chunks.PaletteType;
+import com.viaversion.viaversion.api.minecraft.metadata.ChunkPosition;
+import com.viaversion.viaversion.api.type.Type;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import net.raphimc.viabedrock.protocol.BedrockProtocol;
+
+import java.util.*;
+
+/**
+ * Calculates java sky and block light for the chunks of a single dimension.<br>
+ * The light values are derived from the java block state opacity and emission mappings.<br>
+ * This class is not thread safe. All methods have to be called from the same thread or be externally synchronized.
+ */
+public class LightEngine {
+
+    private static final byte[] FULL_LIGHT = new byte[2048];
+    private static final int[] OFFSET_X = {1, -1, 0, 0, 0, 0};
+    private static final int[] OFFSET_Y = {0, 0, 1, -1, 0, 0};
+    private static final int[] OFFSET_Z = {0, 0, 0, 0, 1, -1};
+    private static final int DOWN = 3;
+
+    static {
+        Arrays.fill(FULL_LIGHT, (byte) 0xFF);
+    }
+
+    private final int minY;
+    private final int sectionCount;
+    private final int height;
+    private final boolean calculateBlockLight;
+    private final byte[] blockStateProperties;
+    private final byte[][] uniformProperties = new byte[256][];
+
+    private final Map<Long, LightChunk> chunks = new HashMap<>();
+    private final List<LightChunk> changedChunks = new ArrayList<>();
+    private final LongQueue increaseQueue = new LongQueue();
+    private final LongQueue decreaseQueue = new LongQueue();
+    private LightChunk lastChunk;
+
+    public LightEngine(final int minY, final int sectionCount, final boolean calculateBlockLight) {
+        this.minY = minY;
+        this.sectionCount = sectionCount;
+        this.height = sectionCount << 4;
+        this.calculateBlockLight = calculateBlockLight;
+
+        final byte[] opacities = BedrockProtocol.MAPPINGS.getJavaBlockStateLightOpacities();
+        final byte[] emissions = BedrockProtocol.MAPPINGS.getJavaBlockStateLightEmissions();
+        this.blockStateProperties = new byte[opacities.length];
+        for (int i = 0; i < opacities.length; i++) {
+            this.blockStateProperties[i] = (byte) (opacities[i] << 4 | emissions[i]);
+        }
+    }
+
+    /**
+     * Sets the block states of a chunk and recalculates its light.
+     *
+     * @param chunkX   The chunk x coordinate
+     * @param chunkZ   The chunk z coordinate
+     * @param sections The java chunk sections. Null entries keep the previously set block states of that section
+     */
+    public void setChunk(final int chunkX, final int chunkZ, final ChunkSection[] sections) {
+        final long chunkKey = ChunkPosition.chunkKey(chunkX, chunkZ);
+        final LightChunk oldChunk = this.chunks.get(chunkKey);
+        final LightChunk chunk = new LightChunk(chunkX, chunkZ, this.sectionCount);
+        for (int i = 0; i < this.sectionCount; i++) {
+            if (sections[i] != null) {
+                this.setSectionProperties(chunk, i, sections[i].palette(PaletteType.BLOCKS));
+            } else if (oldChunk != null) {
+                chunk.properties[i] = oldChunk.properties[i];
+                chunk.sharedProperties[i] = true;
+            } else {
+                chunk.properties[i] = this.uniformProperties(0);
+                chunk.sharedProperties[i] = true;
+            }
+        }
+        this.chunks.put(chunkKey, chunk);
+        this.lastChunk = null;
+        if (oldChunk != null && oldChunk.changed) {
+            this.changedChunks.remove(oldChunk);
+        }
+        this.markChanged(chunk);
+
+        this.relightChunk(chunk, oldChunk, true);
+        if (this.calculateBlockLight) {
+            this.relightChunk(chunk, oldChunk, false);
+        }
+    }
+
+    /**
+     * Sets a single block state and updates the light around it.
+     *
+     * @param x              The block x coordinate
+     * @param y              The block y coordinate
+     * @param z              The block z coordinate
+     * @param javaBlockState The java block state
+     */
+    public void setBlock(final int x, final int y, final int z, final int javaBlockState) {
+        final int relY = y - this.minY;
+        if (relY < 0 || relY >= this.height) return;
+        final LightChunk chunk = this.getChunk(x >> 4, z >> 4);
+        if (chunk == null) return;
+
+        final int properties = this.blockStateProperties(javaBlockState);
+        if (this.getProperties(chunk, x, relY, z) == properties) return;
+        this.setProperties(chunk, x, relY, z, properties);
+
+        this.updateBlock(chunk, x, relY, z, true);
+        if (this.calculateBlockLight) {
+            this.updateBlock(chunk, x, relY, z, false);
+        }
+    }
+
+    public void removeChunk(final int chunkX, final int chunkZ) {
+        final LightChunk chunk = this.chunks.remove(ChunkPosition.chunkKey(chunkX, chunkZ));
+        if (chunk != null) {
+            chunk.changed = false;
+            this.changedChunks.remove(chunk);
+        }
+        this.lastChunk = null;
+    }
+
+    /**
+     * @return The keys of all chunks whose light changed since the last call
+     */
+    public long[] collectChangedChunks() {
+        final long[] chunkKeys = new long[this.changedChunks.size()];
+        for (int i = 0; i < chunkKeys.length; i++) {
+            final LightChunk chunk = this.changedChunks.get(i);
+            chunk.changed = false;
+            chunkKeys[i] = ChunkPosition.chunkKey(chunk.x, chunk.z);
+        }
+        this.changedChunks.clear();
+        return chunkKeys;
+    }
+
+    /**
+     * Serializes the light data of a chunk in the format used by the java chunk data and light update packets.
+     *
+     * @param chunkKey The chunk key
+     * @return The serialized light data or null if the chunk is not loaded
+     */
+    public byte[] writeLightData(final long chunkKey) {
+        final LightChunk chunk = this.chunks.get(chunkKey);
+        if (chunk == null) return null;
+
+        final BitSet skyLightMask = new BitSet();
+        final BitSet blockLightMask = new BitSet();
+        final BitSet emptySkyLightMask = new BitSet();
+        final BitSet emptyBlockLightMask = new BitSet();
+        emptySkyLightMask.set(0);
+        emptyBlockLightMask.set(0);
+        for (int i = 0; i < this.sectionCount; i++) {
+            (chunk.skyLight[i] != null ? skyLightMask : emptySkyLightMask).set(i + 1);
+            (chunk.blockLight[i] != null ? blockLightMask : emptyBlockLightMask).set(i + 1);
+        }
+        skyLightMask.set(this.sectionCount + 1);
+        emptyBlockLightMask.set(this.sectionCount + 1);
+
+        final ByteBuf lightData = Unpooled.buffer();
+        try {
+            Type.LONG_ARRAY_PRIMITIVE.write(lightData, skyLightMask.toLongArray()); // sky light mask
+            Type.LONG_ARRAY_PRIMITIVE.write(lightData, blockLightMask.toLongArray()); // block light mask
+            Type.LONG_ARRAY_PRIMITIVE.write(lightData, emptySkyLightMask.toLongArray()); // empty sky light mask
+            Type.LONG_ARRAY_PRIMITIVE.write(lightData, emptyBlockLightMask.toLongArray()); // empty block light mask
+            Type.VAR_INT.writePrimitive(lightData, skyLightMask.cardinality()); // sky light length
+            for (int i = 0; i < this.sectionCount; i++) {
+                if (chunk.skyLight[i] != null) {
+                    Type.BYTE_ARRAY_PRIMITIVE.write(lightData, chunk.skyLight[i]); // sky light
+                }
+            }
+            Type.BYTE_ARRAY_PRIMITIVE.write(lightData, FULL_LIGHT); // sky light
+            Type.VAR_INT.writePrimitive(lightData, blockLightMask.cardinality()); // block light length
+            for (int i = 0; i < this.sectionCount; i++) {
+                if (chunk.blockLight[i] != null) {
+                    Type.BYTE_ARRAY_PRIMITIVE.write(lightData, chunk.blockLight[i]); // block light
+                }
+            }
+            return ByteBufUtil.getBytes(lightData);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to write light data", e);
+        } finally {
+            lightData.release();
+        }
+    }
+
+    private void relightChunk(final LightChunk chunk, final LightChunk oldChunk, final boolean sky) {
+        final int baseX = chunk.x << 4;
+        final int baseZ = chunk.z << 4;
+
+        if (oldChunk != null) { // Remove the light which the old chunk contributed to its neighbours
+            for (int y = 0; y < this.height; y++) {
+                for (int i = 0; i < 16; i++) {
+                    this.queueBorderDecrease(oldChunk, baseX + i, y, baseZ, sky);
+                    this.queueBorderDecrease(oldChunk, baseX + i, y, baseZ + 15, sky);
+                    this.queueBorderDecrease(oldChunk, baseX, y, baseZ + i, sky);
+                    this.queueBorderDecrease(oldChunk, baseX + 15, y, baseZ + i, sky);
+                }
+            }
+            this.propagateDecrease(sky, chunk);
+        }
+
+        if (sky) {
+            int topSection = this.sectionCount - 1;
+            while (topSection >= 0 && this.isTransparent(chunk.properties[topSection])) {
+                chunk.skyLight[topSection--] = FULL_LIGHT;
+            }
+
+            final int[] skyHeights = new int[16 * 16];
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < 16; z++) {
+                    int y = (topSection + 1) * 16 - 1;
+                    while (y >= 0 && (this.getProperties(chunk, x, y, z) >> 4) == 0) {
+                        this.setLight(chunk, x, y, z, true, 15);
+                        y--;
+                    }
+                    skyHeights[z << 4 | x] = y + 1;
+                }
+            }
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < 16; z++) {
+                    final boolean border = x == 0 || x == 15 || z == 0 || z == 15;
+                    int seedHeight = skyHeights[z << 4 | x];
+                    if (border) {
+                        seedHeight = this.height - 1;
+                    } else {
+                        seedHeight = Math.max(seedHeight, skyHeights[z << 4 | (x - 1)] - 1);
+                        seedHeight = Math.max(seedHeight, skyHeights[z << 4 | (x + 1)] - 1);
+                        seedHeight = Math.max(seedHeight, skyHeights[(z - 1) << 4 | x] - 1);
+                        seedHeight = Math.max(seedHeight, skyHeights[(z + 1) << 4 | x] - 1);
+                    }
+                    for (int y = skyHeights[z << 4 | x]; y <= seedHeight && y < this.height; y++) {
+                        this.increaseQueue.add(pack(baseX + x, y, baseZ + z));
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < this.sectionCount; i++) {
+                final byte[] properties = chunk.properties[i];
+                if (chunk.sharedProperties[i] && (properties[0] & 15) == 0) continue;
+
+                for (int index = 0; index < properties.length; index++) {
+                    final int emission = properties[index] & 15;
+                    if (emission != 0) {
+                        final int x = index & 15;
+                        final int y = i << 4 | index >> 8;
+                        final int z = index >> 4 & 15;
+                        this.setLight(chunk, x, y, z, false, emission);
+                        this.increaseQueue.add(pack(baseX + x, y, baseZ + z));
+                    }
+                }
+            }
+        }
+
+        // Pull in the light of the already loaded neighbours
+        for (int y = 0; y < this.height; y++) {
+            for (int i = 0; i < 16; i++) {
+                this.queueBorderIncrease(baseX + i, y, baseZ - 1, sky);
+                this.queueBorderIncrease(baseX + i, y, baseZ + 16, sky);
+                this.queueBorderIncrease(baseX - 1, y, baseZ + i, sky);
+                this.queueBorderIncrease(baseX + 16, y, baseZ + i, sky);
+            }
+        }
+        this.propagateIncrease(sky);
+    }
+
+    private void updateBlock(final LightChunk chunk, final int x, final int y, final int z, final boolean sky) {
+        final int properties = this.getProperties(chunk, x, y, z);
+        final int oldLevel = this.getLight(chunk, x, y, z, sky);
+        if (oldLevel != 0) {
+            this.setLight(chunk, x, y, z, sky, 0);
+            this.decreaseQueue.add(pack(x, y, z));
+            this.decreaseQueue.add(oldLevel);
+        }
+
+        if (!sky && (properties & 15) != 0) {
+            this.setLight(chunk, x, y, z, false, properties & 15);
+            this.increaseQueue.add(pack(x, y, z));
+        } else if (sky && y == this.height - 1 && (properties >> 4) == 0) {
+            this.setLight(chunk, x, y, z, true, 15);
+            this.increaseQueue.add(pack(x, y, z));
+        }
+        for (int i = 0; i < OFFSET_X.length; i++) { // Let the surrounding light flow into the changed block
+            final int neighbourY = y + OFFSET_Y[i];
+            if (neighbourY >= 0 && neighbourY < this.height) {
+                this.increaseQueue.add(pack(x + OFFSET_X[i], neighbourY, z + OFFSET_Z[i]));
+            }
+        }
+
+        this.propagateDecrease(sky, null);
+        this.propagateIncrease(sky);
+    }
+
+    private void propagateIncrease(final boolean sky) {
+        final LongQueue queue = this.increaseQueue;
+        while (!queue.isEmpty()) {
+            final long position = queue.poll();
+            final int x = unpackX(position);
+            final int y = unpackY(position);
+            final int z = unpackZ(position);
+            final LightChunk chunk = this.getChunk(x >> 4, z >> 4);
+            if (chunk == null) continue;
+            final int level = this.getLight(chunk, x, y, z, sky);
+            if (level <= 1) continue;
+
+            for (int i = 0; i < OFFSET_X.length; i++) {
+                final int neighbourX = x + OFFSET_X[i];
+                final int neighbourY = y + OFFSET_Y[i];
+                final int neighbourZ = z + OFFSET_Z[i];
+                if (neighbourY < 0 || neighbourY >= this.height) continue;
+                final LightChunk neighbourChunk = this.getChunk(neighbourX >> 4, neighbourZ >> 4);
+                if (neighbourChunk == null) continue;
+
+                final int opacity = this.getProperties(neighbourChunk, neighbourX, neighbourY, neighbourZ) >> 4;
+                final int newLevel = sky && i == DOWN && level == 15 && opacity == 0 ? 15 : level - Math.max(1, opacity);
+                if (newLevel > this.getLight(neighbourChunk, neighbourX, neighbourY, neighbourZ, sky)) {
+                    this.setLight(neighbourChunk, neighbourX, neighbourY, neighbourZ, sky, newLevel);
+                    queue.add(pack(neighbourX, neighbourY, neighbourZ));
+                }
+            }
+        }
+    }
+
+    private void propagateDecrease(final boolean sky, final LightChunk excludedChunk) {
+        final LongQueue queue = this.decreaseQueue;
+        while (!queue.isEmpty()) {
+            final long position = queue.poll();
+            final int oldLevel = (int) queue.poll();
+            final int x = unpackX(position);
+            final int y = unpackY(position);
+            final int z = unpackZ(position);
+
+            for (int i = 0; i < OFFSET_X.length; i++) {
+                final int neighbourX = x + OFFSET_X[i];
+                final int neighbourY = y + OFFSET_Y[i];
+                final int neighbourZ = z + OFFSET_Z[i];
+                if (neighbourY < 0 || neighbourY >= this.height) continue;
+                final LightChunk neighbourChunk = this.getChunk(neighbourX >> 4, neighbourZ >> 4);
+                if (neighbourChunk == null || neighbourChunk == excludedChunk) continue;
+
+                final int neighbourLevel = this.getLight(neighbourChunk, neighbourX, neighbourY, neighbourZ, sky);
+                if (neighbourLevel == 0) continue;
+
+                if (neighbourLevel < oldLevel || (sky && i == DOWN && oldLevel == 15)) {
+                    this.setLight(neighbourChunk, neighbourX, neighbourY, neighbourZ, sky, 0);
+                    queue.add(pack(neighbourX, neighbourY, neighbourZ));
+                    queue.add(neighbourLevel);
+
+                    final int emission = this.getProperties(neighbourChunk, neighbourX, neighbourY, neighbourZ) & 15;
+                    if (!sky && emission != 0) {
+                        this.setLight(neighbourChunk, neighbourX, neighbourY, neighbourZ, false, emission);
+                        this.increaseQueue.add(pack(neighbourX, neighbourY, neighbourZ));
+                    }
+                } else {
+                    this.increaseQueue.add(pack(neighbourX, neighbourY, neighbourZ));
+                }
+            }
+        }
+    }
+
+    private void queueBorderDecrease(final LightChunk oldChunk, final int x, final int y, final int z, final boolean sky) {
+        final int level = this.getLight(oldChunk, x, y, z, sky);
+        if (level > 1) {
+            this.decreaseQueue.add(pack(x, y, z));
+            this.decreaseQueue.add(level);
+        }
+    }
+
+    private void queueBorderIncrease(final int x, final int y, final int z, final boolean sky) {
+        final LightChunk chunk = this.getChunk(x >> 4, z >> 4);
+        if (chunk != null && this.getLight(chunk, x, y, z, sky) > 1) {
+            this.increaseQueue.add(pack(x, y, z));
+        }
+    }
+
+    private void setSectionProperties(final LightChunk chunk, final int sectionIndex, final DataPalette blockPalette) {
+        if (blockPalette.size() == 1) {
+            chunk.properties[sectionIndex] = this.uniformProperties(this.blockStateProperties(blockPalette.idByIndex(0)));
+            chunk.sharedProperties[sectionIndex] = true;
+            return;
+        }
+
+        final byte[] paletteProperties = new byte[blockPalette.size()];
+        for (int i = 0; i < paletteProperties.length; i++) {
+            paletteProperties[i] = (byte) this.blockStateProperties(blockPalette.idByIndex(i));
+        }
+        final byte[] properties = new byte[ChunkSection.SIZE];
+        for (int i = 0; i < properties.length; i++) {
+            properties[i] = paletteProperties[blockPalette.paletteIndexAt(i)];
+        }
+        chunk.properties[sectionIndex] = properties;
+    }
+
+    private boolean isTransparent(final byte[] properties) {
+        for (byte property : properties) {
+            if ((property & 0xF0) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int blockStateProperties(final int javaBlockState) {
+        if (javaBlockState < 0 || javaBlockState >= this.blockStateProperties.length) {
+            return 0xF0;
+        }
+        return this.blockStateProperties[javaBlockState] & 0xFF;
+    }
+
+    private byte[] uniformProperties(final int properties) {
+        byte[] uniformProperties = this.uniformProperties[properties];
+        if (uniformProperties == null) {
+            uniformProperties = this.uniformProperties[properties] = new byte[ChunkSection.SIZE];
+            Arrays.fill(uniformProperties, (byte) properties);
+        }
+        return uniformProperties;
+    }
+
+    private LightChunk getChunk(final int chunkX, final int chunkZ) {
+        final LightChunk lastChunk = this.lastChunk;
+        if (lastChunk != null && lastChunk.x == chunkX && lastChunk.z == chunkZ) {
+            return lastChunk;
+        }
+
+        final LightChunk chunk = this.chunks.get(ChunkPosition.chunkKey(chunkX, chunkZ));
+        if (chunk != null) {
+            this.lastChunk = chunk;
+        }
+        return chunk;
+    }
+
+    private int getProperties(final LightChunk chunk, final int x, final int y, final int z) {
+        return chunk.properties[y >> 4][index(x, y, z)] & 0xFF;
+    }
+
+    private void setProperties(final LightChunk chunk, final int x, final int y, final int z, final int properties) {
+        final int sectionIndex = y >> 4;
+        if (chunk.sharedProperties[sectionIndex]) {
+            chunk.properties[sectionIndex] = chunk.properties[sectionIndex].clone();
+            chunk.sharedProperties[sectionIndex] = false;
+        }
+        chunk.properties[sectionIndex][index(x, y, z)] = (byte) properties;
+    }
+
+    private int getLight(final LightChunk chunk, final int x, final int y, final int z, final boolean sky) {
+        final byte[] light = (sky ? chunk.skyLight : chunk.blockLight)[y >> 4];
+        if (light == null) return 0;
+
+        final int index = index(x, y, z);
+        return light[index >> 1] >> ((index & 1) << 2) & 15;
+    }
+
+    private void setLight(final LightChunk chunk, final int x, final int y, final int z, final boolean sky, final int level) {
+        final byte[][] lightArrays = sky ? chunk.skyLight : chunk.blockLight;
+        final int sectionIndex = y >> 4;
+        byte[] light = lightArrays[sectionIndex];
+        if (light == null) {
+            if (level == 0) return;
+            light = lightArrays[sectionIndex] = new byte[2048];
+        } else if (light == FULL_LIGHT) {
+            if (level == 15) return;
+            light = lightArrays[sectionIndex] = FULL_LIGHT.clone();
+        }
+
+        final int index = index(x, y, z);
+        final int shift = (index & 1) << 2;
+        light[index >> 1] = (byte) (light[index >> 1] & ~(15 << shift) | level << shift);
+        this.markChanged(chunk);
+    }
+
+    private void markChanged(final LightChunk chunk) {
+        if (!chunk.changed) {
+            chunk.changed = true;
+            this.changedChunks.add(chunk);
+        }
+    }
+
+    private static int index(final int x, final int y, final int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | x & 15;
+    }
+
+    private static long pack(final int x, final int y, final int z) {
+        return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | y & 0xFFF;
+    }
+
+    private static int unpackX(final long position) {
+        return (int) (position >> 38);
+    }
+
+    private static int unpackY(final long position) {
+        return (int) (position & 0xFFF);
+    }
+
+    private static int unpackZ(final long position) {
+        return (int) (position << 26 >> 38);
+    }
+
+    private static class LightChunk {
+
+        private final int x;
+        private final int z;
+        private final byte[][] properties; // opacity << 4 | emission
+        private final boolean[] sharedProperties;
+        private final byte[][] skyLight;
+        private final byte[][] blockLight;
+        private boolean changed;
+
+        private LightChunk(final int x, final int z, final int sectionCount) {
+            this.x = x;
+            this.z = z;
+            this.properties = new byte[sectionCount][];
+            this.sharedProperties = new boolean[sectionCount];
+            this.skyLight = new byte[sectionCount][];
+            this.blockLight = new byte[sectionCount][];
+        }
+
+    }
+
+    private static class LongQueue {
+
+        private long[] elements = new long[1024];
+        private int head;
+        private int tail;
+
+        private void add(final long element) {
+            this.elements[this.tail] = element;
+            this.tail = (this.tail + 1) & (this.elements.length - 1);
+            if (this.tail == this.head) {
+                final long[] elements = new long[this.elements.length << 1];
+                final int headLength = this.elements.length - this.head;
+                System.arraycopy(this.elements, this.head, elements, 0, headLength);
+                System.arraycopy(this.elements, 0, elements, headLength, this.head);
+                this.head = 0;
+                this.tail = this.elements.length;
+                this.elements = elements;
+            }
+        }
+
+        private long poll() {
+            final long element = this.elements[this.head];
+            this.head = (this.head + 1) & (this.elements.length - 1);
+            return element;
+        }
+
+        private boolean isEmpty() {
+            return this.head == this.tail;
+        }
+
+    }
+
+}
@@ -0,0 +1,317 @@
+/*
+ * This file is part of ViaBedrock - https://github.com/RaphiMC/ViaBedrock
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viabedrock.api.http;
+
+import net.raphimc.viabedrock.ViaBedrock;
+import net.raphimc.viabedrock.api.model.ResourcePack;
+import net.raphimc.viabedrock.api.util.StringUtil;
+import net.raphimc.viabedrock.protocol.data.ProtocolConstants;
+import net.raphimc.viabedrock.protocol.rewriter.ResourcePackRewriter;
+import net.raphimc.viabedrock.protocol.storage.ResourcePacksStorage;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+/**
+ * Disk cache of converted Java resource packs.<br>
+ * Entries are keyed by the ordered (pack id, version, content hash) list of the bedrock resource pack stack, so every connection with the same packs shares one conversion.
+ */
+public class ConvertedPackCache {
+
+    private static final String ZIP_EXTENSION = ".zip";
+    private static final String HASH_EXTENSION = ".sha1";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final int HASH_LENGTH = 40; // Hex encoded SHA-1
+    private static final long STALE_TEMP_FILE_AGE = 60 * 60 * 1000L;
+
+    private final File folder;
+    private final long maxSize;
+    private final int compressionLevel;
+    private final Map<String, CompletableFuture<Void>> conversions = new ConcurrentHashMap<>();
+    private final Map<String, String> offers = new ConcurrentHashMap<>();
+
+    public ConvertedPackCache(final File folder, final long maxSize, final int compressionLevel) {
+        this.folder = folder;
+        this.maxSize = maxSize;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Creates a key for the resource packs offered in the RESOURCE_PACKS_INFO packet.<br>
+     * This is used to advertise the hash of a previously converted pack before the actual pack stack is known.
+     *
+     * @param resourcePacks The offered resource packs
+     * @return The offer key
+     */
+    public static String createOfferKey(final ResourcePack[] resourcePacks) {
+        final StringBuilder builder = new StringBuilder();
+        for (ResourcePack resourcePack : resourcePacks) {
+            builder.append(resourcePack.packId()).append('_').append(resourcePack.version()).append('_').append(resourcePack.compressedDataLength()).append('_').append(resourcePack.contentId()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the converted pack for the given resource packs and converts it if it isn't cached yet.<br>
+     * Every caller gets its own open file channel, so the pack can still be served if it is evicted in the meantime. The caller has to close the entry.
+     *
+     * @param resourcePacksStorage The resource packs storage
+     * @return The opened cache entry
+     * @throws Exception If the conversion failed
+     */
+    public Entry getOrConvert(final ResourcePacksStorage resourcePacksStorage) throws Exception {
+        final String key = this.createKey(resourcePacksStorage);
+        Entry entry = this.open(key);
+        if (entry == null) {
+            entry = this.convert(key, resourcePacksStorage);
+        }
+        if (resourcePacksStorage.getJavaPackOfferKey() != null) {
+            this.offers.put(resourcePacksStorage.getJavaPackOfferKey(), key);
+        }
+        return entry;
+    }
+
+    /**
+     * @param offerKey The offer key created by {@link #createOfferKey(ResourcePack[])}
+     * @return The SHA-1 hash of the pack which was last served for the given offer or an empty string if unknown
+     */
+    public String getOfferedHash(final String offerKey) {
+        final String key = this.offers.get(offerKey);
+        if (key == null) {
+            return "";
+        }
+
+        final String hash = this.readHash(key);
+        if (hash == null) {
+            this.offers.remove(offerKey);
+            return "";
+        }
+        return hash;
+    }
+
+    private Entry convert(final String key, final ResourcePacksStorage resourcePacksStorage) throws Exception {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final CompletableFuture<Void> runningConversion = this.conversions.putIfAbsent(key, future);
+        if (runningConversion != null) {
+            try {
+                runningConversion.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            final Entry entry = this.open(key);
+            // The pack might have been evicted again before it could be opened
+            return entry != null ? entry : this.convert(key, resourcePacksStorage);
+        }
+
+        try {
+            final Map<String, Long> timings = new LinkedHashMap<>();
+            final ResourcePack.Content javaContent = ResourcePackRewriter.bedrockToJava(resourcePacksStorage, timings);
+            final long zipStart = System.currentTimeMillis();
+            final Entry entry = this.put(key, javaContent);
+            timings.put("zip", System.currentTimeMillis() - zipStart);
+            ViaBedrock.getPlatform().getLogger().log(Level.INFO, "Converted packs in " + timings.values().stream().mapToLong(Long::longValue).sum() + "ms (" + timings.entrySet().stream().map(timing -> timing.getKey() + ": " + timing.getValue() + "ms").collect(Collectors.joining(", ")) + ")");
+            future.complete(null);
+            return entry;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.conversions.remove(key, future);
+        }
+    }
+
+    private String createKey(final ResourcePacksStorage resourcePacksStorage) throws NoSuchAlgorithmException {
+        final MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        sha1.update((ViaBedrock.IMPL_VERSION + "_" + ProtocolConstants.JAVA_PACK_VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+        resourcePacksStorage.iterateResourcePacksTopToBottom(pack -> {
+            sha1.update((pack.packId() + "_" + pack.version() + "_").getBytes(StandardCharsets.UTF_8));
+            sha1.update(pack.contentHash());
+            sha1.update((byte) '\n');
+            return true;
+        });
+        return StringUtil.toHex(sha1.digest());
+    }
+
+    private String readHash(final String key) {
+        final File zipFile = new File(this.folder, key + ZIP_EXTENSION);
+        final File hashFile = new File(this.folder, key + HASH_EXTENSION);
+        if (!zipFile.isFile() || !hashFile.isFile()) {
+            return null;
+        }
+
+        try {
+            final String hash = new String(Files.readAllBytes(hashFile.toPath()), StandardCharsets.US_ASCII).trim();
+            return hash.length() == HASH_LENGTH ? hash : null; // Partially written
+        } catch (IOException e) {
+            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Failed to read converted pack cache entry: " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Opens a cache entry. This is synchronized with the eviction, so an entry can't be deleted between its lookup and the opening of its file.
+     * Once opened, the file stays readable even if the entry is evicted afterwards.
+     */
+    private synchronized Entry open(final String key) {
+        final String hash = this.readHash(key);
+        if (hash == null) {
+            return null;
+        }
+
+        final File zipFile = new File(this.folder, key + ZIP_EXTENSION);
+        final File hashFile = new File(this.folder, key + HASH_EXTENSION);
+        try {
+            final FileChannel fileChannel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ);
+            zipFile.setLastModified(System.currentTimeMillis());
+            return new Entry(fileChannel, hash, fileChannel.size(), hashFile.lastModified());
+        } catch (IOException e) {
+            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Failed to open converted pack cache entry: " + key, e);
+            return null;
+        }
+    }
+
+    private Entry put(final String key, final ResourcePack.Content javaContent) throws IOException, NoSuchAlgorithmException {
+        final File zipFile = new File(this.folder, key + ZIP_EXTENSION);
+        final File hashFile = new File(this.folder, key + HASH_EXTENSION);
+        final MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+
+        final File tempFile = File.createTempFile(key, TEMP_EXTENSION, this.folder);
+        try {
+            // The pack is streamed into the file and hashed on the way instead of being built in memory first
+            try (OutputStream outputStream = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024), sha1)) {
+                javaContent.toZip(outputStream, this.compressionLevel);
+            }
+            this.store(tempFile, zipFile, hashFile, StringUtil.toHex(sha1.digest()));
+        } finally {
+            tempFile.delete();
+        }
+
+        final Entry entry = this.open(key);
+        if (entry == null) {
+            throw new IOException("Failed to open converted pack: " + zipFile.getName());
+        }
+        this.evict(zipFile);
+        return entry;
+    }
+
+    /**
+     * Moves a converted pack into place. The zip file is moved before its hash file is written, so an interrupted store leaves a zip file without a hash file.
+     * Such an entry is converted again instead of being served with the hash of another conversion.
+     */
+    private synchronized void store(final File tempFile, final File zipFile, final File hashFile, final String hash) throws IOException {
+        Files.deleteIfExists(hashFile.toPath());
+        Files.move(tempFile.toPath(), zipFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.write(hashFile.toPath(), hash.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private synchronized void evict(final File keep) {
+        // Temporary files of conversions which were interrupted, for example by a crash
+        final long staleTime = System.currentTimeMillis() - STALE_TEMP_FILE_AGE;
+        final File[] tempFiles = this.folder.listFiles((dir, name) -> name.endsWith(TEMP_EXTENSION));
+        if (tempFiles != null) {
+            for (File tempFile : tempFiles) {
+                if (tempFile.lastModified() < staleTime) {
+                    tempFile.delete();
+                }
+            }
+        }
+
+        final File[] zipFiles = this.folder.listFiles((dir, name) -> name.endsWith(ZIP_EXTENSION));
+        if (zipFiles == null) {
+            return;
+        }
+
+        Arrays.sort(zipFiles, Comparator.comparingLong(File::lastModified).reversed());
+        long size = keep.length();
+        for (File zipFile : zipFiles) {
+            if (zipFile.equals(keep)) continue;
+
+            size += zipFile.length();
+            if (size > this.maxSize) {
+                final String key = zipFile.getName().substring(0, zipFile.getName().length() - ZIP_EXTENSION.length());
+                // Entries which are being served stay readable through their open channels. On Windows the deletion fails instead, so the entry is kept for now.
+                if (zipFile.delete()) {
+                    new File(this.folder, key + HASH_EXTENSION).delete();
+                }
+            }
+        }
+    }
+
+    public static class Entry implements Closeable {
+
+        private final FileChannel fileChannel;
+        private final String hash;
+        private final long length;
+        private final long lastModified;
+
+        public Entry(final FileChannel fileChannel, final String hash, final long length, final long lastModified) {
+            this.fileChannel = fileChannel;
+            this.hash = hash;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return The open channel of the zip file. It is closed along with the entry.
+         */
+        public FileChannel fileChannel() {
+            return this.fileChannel;
+        }
+
+        /**
+         * @return The lowercase hex encoded SHA-1 hash of the zip file
+         */
+        public String hash() {
+            return this.hash;
+        }
+
+        public long length() {
+            return this.length;
+        }
+
+        /**
+         * @return The time at which the pack was converted. The zip file's own modification time is used to track its last use.
+         */
+        public long lastModified() {
+            return this.lastModified;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.fileChannel.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,326 @@
+/*
+ * This file is part of ViaBedrock - https://github.com/RaphiMC/ViaBedrock
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viabedrock.api.http;
+
+import com.viaversion.viaversion.api.connection.UserConnection;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedNioFile;
+import net.raphimc.viabedrock.ViaBedrock;
+import net.raphimc.viabedrock.protocol.packets.ResourcePackPackets;
+import net.raphimc.viabedrock.protocol.storage.ResourcePacksStorage;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+
+public class ResourcePackHttpHandler extends SimpleChannelInboundHandler<HttpObject> {
+
+    private static final int CHUNK_SIZE = 65535;
+
+    private final ResourcePackHttpServer server;
+    private final Queue<HttpRequest> pendingRequests = new ArrayDeque<>();
+    private boolean responding;
+
+    public ResourcePackHttpHandler(final ResourcePackHttpServer server) {
+        this.server = server;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) {
+        if (!(msg instanceof HttpRequest)) return;
+
+        // Pipelined requests which were already decoded are answered one after another, so that the response bodies don't interleave
+        this.pendingRequests.add((HttpRequest) msg);
+        if (!this.responding) {
+            this.handleNextRequest(ctx);
+        }
+    }
+
+    private void handleNextRequest(final ChannelHandlerContext ctx) {
+        final HttpRequest request = this.pendingRequests.poll();
+        if (request == null) {
+            this.responding = false;
+            ctx.channel().config().setAutoRead(true);
+            return;
+        }
+
+        // Don't read further requests until this one has been answered
+        this.responding = true;
+        ctx.channel().config().setAutoRead(false);
+        this.handleRequest(ctx, request).addListener(future -> {
+            if (future.isSuccess()) {
+                this.handleNextRequest(ctx);
+            } else {
+                this.pendingRequests.clear();
+                ctx.close();
+            }
+        });
+    }
+
+    private ChannelFuture handleRequest(final ChannelHandlerContext ctx, final HttpRequest request) {
+        if (!request.decoderResult().isSuccess()) {
+            return this.sendStatus(ctx, request, HttpResponseStatus.BAD_REQUEST);
+        }
+        if (!request.method().equals(HttpMethod.GET) && !request.method().equals(HttpMethod.HEAD)) {
+            return this.sendStatus(ctx, request, HttpResponseStatus.METHOD_NOT_ALLOWED);
+        }
+
+        final List<String> tokens = new QueryStringDecoder(request.uri()).parameters().get("token");
+        final UserConnection user = tokens != null && !tokens.isEmpty() ? this.getConnection(tokens.get(0)) : null;
+        final ResourcePacksStorage resourcePacksStorage = user != null ? user.get(ResourcePacksStorage.class) : null;
+        if (resourcePacksStorage == null) {
+            return this.sendStatus(ctx, request, HttpResponseStatus.FORBIDDEN);
+        }
+
+        final InetAddress address = ((InetSocketAddress) ctx.channel().remoteAddress()).getAddress();
+        if (!this.server.tryAcquireRequestSlot(address)) {
+            return this.sendStatus(ctx, request, HttpResponseStatus.TOO_MANY_REQUESTS);
+        }
+
+        final CompletableFuture<Void> loadingFuture = new CompletableFuture<>();
+        resourcePacksStorage.getLoadingFuture().thenRun(() -> loadingFuture.complete(null));
+        final ChannelFuture userCloseFuture = user.getChannel().closeFuture();
+        final ChannelFutureListener userCloseListener = future -> loadingFuture.completeExceptionally(new ClosedChannelException());
+        userCloseFuture.addListener(userCloseListener);
+
+        final ChannelPromise promise = ctx.newPromise();
+        loadingFuture.thenApplyAsync(v -> {
+            try {
+                return this.server.getPackCache().getOrConvert(resourcePacksStorage);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, this.server.getConversionExecutor()).whenComplete((entry, throwable) -> ctx.executor().execute(() -> {
+            userCloseFuture.removeListener(userCloseListener);
+
+            ChannelFuture responseFuture;
+            if (throwable != null) {
+                final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                if (cause instanceof ClosedChannelException) {
+                    ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Connection closed before resource packs were loaded");
+                } else {
+                    ViaBedrock.getPlatform().getLogger().log(Level.SEVERE, "Failed to convert resource packs", cause);
+                }
+                responseFuture = this.sendStatus(ctx, request, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+            } else {
+                try {
+                    responseFuture = this.sendPack(ctx, request, user, resourcePacksStorage, entry);
+                } catch (IOException e) {
+                    closeQuietly(entry);
+                    ViaBedrock.getPlatform().getLogger().log(Level.SEVERE, "Failed to send resource pack", e);
+                    responseFuture = this.sendStatus(ctx, request, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+                }
+            }
+            responseFuture.addListener(future -> {
+                this.server.releaseRequestSlot(address);
+                if (future.isSuccess()) {
+                    promise.setSuccess();
+                } else {
+                    promise.setFailure(future.cause());
+                }
+            });
+        }));
+        return promise;
+    }
+
+    private UserConnection getConnection(final String token) {
+        try {
+            return this.server.getConnection(UUID.fromString(token));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        ctx.close();
+    }
+
+    /**
+     * Sends the pack and takes ownership of the entry, which is closed once it has been sent.
+     */
+    private ChannelFuture sendPack(final ChannelHandlerContext ctx, final HttpRequest request, final UserConnection user, final ResourcePacksStorage resourcePacksStorage, final ConvertedPackCache.Entry entry) throws IOException {
+        if (!resourcePacksStorage.getAdvertisedJavaPackHash().isEmpty() && !resourcePacksStorage.getAdvertisedJavaPackHash().equals(entry.hash())) {
+            ViaBedrock.getPlatform().getLogger().log(Level.INFO, "Advertised resource pack hash does not match the converted pack. Pushing the pack again");
+            ResourcePackPackets.resendJavaPackPush(user, entry.hash());
+            closeQuietly(entry);
+            return this.sendStatus(ctx, request, HttpResponseStatus.CONFLICT);
+        }
+
+        final String etag = "\"" + entry.hash() + "\"";
+        if (isNotModified(request, etag, entry.lastModified())) {
+            final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_MODIFIED);
+            response.headers().set(HttpHeaderNames.ETAG, etag);
+            response.headers().set(HttpHeaderNames.LAST_MODIFIED, DateFormatter.format(new Date(entry.lastModified())));
+            closeQuietly(entry);
+            return this.send(ctx, request, response);
+        }
+
+        long start = 0;
+        long end = entry.length() - 1;
+        HttpResponseStatus status = HttpResponseStatus.OK;
+        final String range = request.headers().get(HttpHeaderNames.RANGE);
+        if (range != null) {
+            final long[] parsedRange = parseRange(range, entry.length());
+            if (parsedRange == null) {
+                final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes */" + entry.length());
+                closeQuietly(entry);
+                return this.send(ctx, request, response);
+            } else if (parsedRange.length != 0) {
+                start = parsedRange[0];
+                end = parsedRange[1];
+                status = HttpResponseStatus.PARTIAL_CONTENT;
+            }
+        }
+        final long length = end - start + 1;
+
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/octet-stream");
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, length);
+        response.headers().set(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+        response.headers().set(HttpHeaderNames.ETAG, etag);
+        response.headers().set(HttpHeaderNames.LAST_MODIFIED, DateFormatter.format(new Date(entry.lastModified())));
+        if (status == HttpResponseStatus.PARTIAL_CONTENT) {
+            response.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + entry.length());
+        }
+        final boolean keepAlive = HttpUtil.isKeepAlive(request);
+        HttpUtil.setKeepAlive(response, keepAlive);
+
+        final ChannelFuture future;
+        if (request.method().equals(HttpMethod.HEAD)) {
+            closeQuietly(entry);
+            ctx.write(response);
+            future = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        } else if (ctx.pipeline().get(SslHandler.class) == null) {
+            // Zero-copy transfer straight from the page cache to the socket. The region closes the channel once it has been released.
+            ctx.write(response);
+            ctx.write(new DefaultFileRegion(entry.fileChannel(), start, length));
+            future = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        } else {
+            // The file has to pass through the SslHandler, so it can't be transferred directly
+            final ChunkedNioFile file = new ChunkedNioFile(entry.fileChannel(), start, length, CHUNK_SIZE);
+            ctx.write(response);
+            future = ctx.writeAndFlush(new HttpChunkedInput(file));
+        }
+        if (!keepAlive) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+        return future;
+    }
+
+    private ChannelFuture sendStatus(final ChannelHandlerContext ctx, final HttpRequest request, final HttpResponseStatus status) {
+        return this.send(ctx, request, new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status));
+    }
+
+    private ChannelFuture send(final ChannelHandlerContext ctx, final HttpRequest request, final FullHttpResponse response) {
+        final boolean keepAlive = HttpUtil.isKeepAlive(request) && request.decoderResult().isSuccess();
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+        HttpUtil.setKeepAlive(response, keepAlive);
+
+        final ChannelFuture future = ctx.writeAndFlush(response);
+        if (!keepAlive) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+        return future;
+    }
+
+    private static void closeQuietly(final ConvertedPackCache.Entry entry) {
+        try {
+            entry.close();
+        } catch (IOException e) {
+            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Failed to close converted pack", e);
+        }
+    }
+
+    private static boolean isNotModified(final HttpRequest request, final String etag, final long lastModified) {
+        final String ifNoneMatch = request.headers().get(HttpHeaderNames.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        final Date ifModifiedSince = DateFormatter.parseHttpDate(request.headers().get(HttpHeaderNames.IF_MODIFIED_SINCE));
+        // HTTP dates only have a precision of one second
+        return ifModifiedSince != null && lastModified / 1000 <= ifModifiedSince.getTime() / 1000;
+    }
+
+    /**
+     * Parses a single byte range of a Range header.<br>
+     * Multiple ranges are not supported and cause the whole content to be sent.
+     *
+     * @param range  The Range header value
+     * @param length The content length
+     * @return The inclusive start and end of the range, an empty array if the header should be ignored or null if the range is not satisfiable
+     */
+    private static long[] parseRange(final String range, final long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+            return new long[0];
+        }
+
+        final String spec = range.substring(6).trim();
+        final int separator = spec.indexOf('-');
+        if (separator == -1) {
+            return new long[0];
+        }
+        try {
+            long start;
+            long end;
+            if (separator == 0) {
+                final long suffixLength = Long.parseLong(spec.substring(1));
+                if (suffixLength <= 0) {
+                    return null;
+                }
+                start = Math.max(length - suffixLength, 0);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, separator));
+                end = separator == spec.length() - 1 ? length - 1 : Math.min(Long.parseLong(spec.substring(separator + 1)), length - 1);
+            }
+            if (start < 0 || start >= length || end < start) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+}
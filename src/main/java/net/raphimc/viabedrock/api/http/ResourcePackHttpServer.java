@@ -24,24 +24,29 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.*;
-import io.netty.handler.stream.ChunkedStream;
+import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import net.raphimc.viabedrock.ViaBedrock;
-import net.raphimc.viabedrock.api.model.ResourcePack;
-import net.raphimc.viabedrock.protocol.rewriter.ResourcePackRewriter;
-import net.raphimc.viabedrock.protocol.storage.ResourcePacksStorage;
 
-import java.io.ByteArrayInputStream;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
-import java.util.logging.Level;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ResourcePackHttpServer {
 
+    private static final int MAX_REQUESTS_PER_ADDRESS = 4;
+
     private final InetSocketAddress bindAddress;
     private final ChannelFuture channelFuture;
     private final BiMap<UUID, UserConnection> connections = HashBiMap.create();
+    private final ExecutorService conversionExecutor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), new DefaultThreadFactory("ViaBedrock Resource Pack Converter", true));
+    private final Map<InetAddress, Integer> activeRequests = new HashMap<>();
+    private final ConvertedPackCache packCache = new ConvertedPackCache(ViaBedrock.getPlatform().getConvertedPacksFolder(), ViaBedrock.getConfig().getConvertedPackCacheSize(), ViaBedrock.getConfig().getConvertedPackCompressionLevel());
 
     public ResourcePackHttpServer(final InetSocketAddress bindAddress) {
         this.bindAddress = bindAddress;
@@ -56,58 +61,7 @@ public class ResourcePackHttpServer {
                     protected void initChannel(Channel channel) {
                         channel.pipeline().addLast("http_codec", new HttpServerCodec());
                         channel.pipeline().addLast("chunked_writer", new ChunkedWriteHandler());
-                        channel.pipeline().addLast("http_handler", new SimpleChannelInboundHandler<Object>() {
-                            @Override
-                            protected void channelRead0(ChannelHandlerContext ctx, Object msg) throws InterruptedException {
-                                if (msg instanceof HttpRequest) {
-                                    final HttpRequest request = (HttpRequest) msg;
-                                    if (!request.method().equals(HttpMethod.GET)) {
-                                        ctx.close();
-                                        return;
-                                    }
-
-                                    final QueryStringDecoder queryStringDecoder = new QueryStringDecoder(request.uri());
-                                    if (!queryStringDecoder.parameters().containsKey("token")) {
-                                        ctx.close();
-                                        return;
-                                    }
-                                    final UUID uuid = UUID.fromString(queryStringDecoder.parameters().get("token").get(0));
-                                    final UserConnection user = ResourcePackHttpServer.this.connections.get(uuid);
-                                    if (user == null) {
-                                        ctx.close();
-                                        return;
-                                    }
-
-                                    final ResourcePacksStorage resourcePacksStorage = user.get(ResourcePacksStorage.class);
-                                    while (!resourcePacksStorage.hasFinishedLoading()) {
-                                        Thread.sleep(100);
-                                    }
-
-                                    try {
-                                        final long start = System.currentTimeMillis();
-                                        final ResourcePack.Content javaContent = ResourcePackRewriter.bedrockToJava(resourcePacksStorage);
-                                        final byte[] data = javaContent.toZip();
-                                        ViaBedrock.getPlatform().getLogger().log(Level.INFO, "Converted packs in " + (System.currentTimeMillis() - start) + "ms");
-
-                                        final DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
-                                        response.headers().set(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
-                                        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/octet-stream");
-                                        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, data.length);
-                                        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
-                                        ctx.write(response);
-                                        ctx.writeAndFlush(new HttpChunkedInput(new ChunkedStream(new ByteArrayInputStream(data), 65535))).addListener(ChannelFutureListener.CLOSE);
-                                    } catch (Throwable e) {
-                                        ViaBedrock.getPlatform().getLogger().log(Level.SEVERE, "Failed to convert resource packs", e);
-                                        ctx.close();
-                                    }
-                                }
-                            }
-
-                            @Override
-                            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-                                ctx.close();
-                            }
-                        });
+                        channel.pipeline().addLast("http_handler", new ResourcePackHttpHandler(ResourcePackHttpServer.this));
                     }
                 })
                 .bind(bindAddress)
@@ -126,10 +80,34 @@ public class ResourcePackHttpServer {
         });
     }
 
+    public UserConnection getConnection(final UUID uuid) {
+        synchronized (this.connections) {
+            return this.connections.get(uuid);
+        }
+    }
+
+    public boolean tryAcquireRequestSlot(final InetAddress address) {
+        synchronized (this.activeRequests) {
+            final int count = this.activeRequests.getOrDefault(address, 0);
+            if (count >= MAX_REQUESTS_PER_ADDRESS) {
+                return false;
+            }
+            this.activeRequests.put(address, count + 1);
+            return true;
+        }
+    }
+
+    public void releaseRequestSlot(final InetAddress address) {
+        synchronized (this.activeRequests) {
+            this.activeRequests.computeIfPresent(address, (k, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
     public void stop() {
         if (this.channelFuture != null) {
             this.channelFuture.channel().close();
         }
+        this.conversionExecutor.shutdownNow();
     }
 
     public String getUrl() {
@@ -142,6 +120,14 @@ public class ResourcePackHttpServer {
         }
     }
 
+    public ExecutorService getConversionExecutor() {
+        return this.conversionExecutor;
+    }
+
+    public ConvertedPackCache getPackCache() {
+        return this.packCache;
+    }
+
     public Channel getChannel() {
         return this.channelFuture.channel();
     }
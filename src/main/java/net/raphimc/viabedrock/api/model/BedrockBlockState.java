@@ -56,8 +56,12 @@ public class BedrockBlockState extends BlockState {
 
     public static void sanitizeName(final CompoundTag tag) {
         final StringTag name = tag.get("name");
+        name.setValue(sanitizeName(name.getValue()));
+    }
+
+    public static String sanitizeName(final String name) {
         String namespace = "minecraft";
-        String identifier = name.getValue();
+        String identifier = name;
         if (identifier.contains(":")) {
             final String[] namespaceAndIdentifier = identifier.split(":", 2);
             namespace = namespaceAndIdentifier[0];
@@ -65,7 +69,7 @@ public class BedrockBlockState extends BlockState {
         } else {
             identifier = identifier.toLowerCase(Locale.ROOT);
         }
-        name.setValue(namespace + ":" + identifier);
+        return namespace + ":" + identifier;
     }
 
     public CompoundTag blockStateTag() {
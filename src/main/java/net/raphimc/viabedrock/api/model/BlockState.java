@@ -26,6 +26,7 @@ public class BlockState {
     private final String namespace;
     private final String identifier;
     private final Map<String, String> properties;
+    private int hashCode;
 
     public BlockState(final String identifier, final Map<String, String> properties) {
         this("minecraft", identifier, properties);
@@ -98,6 +99,8 @@ public class BlockState {
     }
 
     public BlockState withProperty(final String key, final String value) {
+        if (value.equals(this.properties.get(key))) return this;
+
         final Map<String, String> newProperties = Maps.newHashMap(this.properties);
         newProperties.put(key, value);
         return new BlockState(this.namespace, this.identifier, newProperties);
@@ -176,12 +179,16 @@ public class BlockState {
         if (this == o) return true;
         if (!(o instanceof BlockState)) return false;
         BlockState that = (BlockState) o;
+        if (this.hashCode() != that.hashCode()) return false;
         return Objects.equals(namespace, that.namespace) && Objects.equals(identifier, that.identifier) && Objects.equals(properties, that.properties);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(namespace, identifier, properties);
+        if (this.hashCode == 0) { // Block states are used as map keys a lot, so the hash is cached
+            this.hashCode = Objects.hash(namespace, identifier, properties);
+        }
+        return this.hashCode;
     }
 
     @Override
@@ -22,10 +22,12 @@ import com.viaversion.viaversion.libs.gson.JsonElement;
 import com.viaversion.viaversion.libs.gson.JsonObject;
 import com.viaversion.viaversion.util.GsonUtil;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.Unpooled;
 import net.raphimc.viabedrock.ViaBedrock;
 import net.raphimc.viabedrock.api.util.JsonUtil;
-import net.raphimc.viabedrock.api.util.MathUtil;
+import net.raphimc.viabedrock.api.util.ZipIndex;
+import net.raphimc.viabedrock.api.util.ZipWriter;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -37,18 +39,26 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 public class ResourcePack {
 
@@ -62,6 +72,14 @@ public class ResourcePack {
     public static final int TYPE_SKINS = 7;
     public static final int TYPE_WORLD_TEMPLATE = 8;
 
+    // Cipher instances aren't thread safe and entries can be decrypted by multiple threads at once
+    private static final ThreadLocal<Cipher> AES_CFB8 = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/CFB8/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    });
     private static final byte[] CONTENTS_JSON_ENCRYPTED_MAGIC = new byte[]{(byte) 0xFC, (byte) 0xB9, (byte) 0xCF, (byte) 0x9B};
 
     // Manifest validation is enabled by default, but can be disabled for debugging purposes (ResourcePackConverterTest)
@@ -79,10 +97,10 @@ public class ResourcePack {
     private boolean premium;
     private int type;
 
-    private byte[] compressedData;
-    private int maxChunkSize;
-    private boolean[] receivedChunks;
+    private int compressedDataLength;
+    private ResourcePackDownload download;
     private Content content;
+    private String storeKey;
 
     public ResourcePack(final UUID packId, final String version, final String contentKey, final String subPackName, final String contentId, final boolean scripting, final boolean raytracingCapable, final long compressedSize, final int type) {
         this.packId = packId;
@@ -92,34 +110,60 @@ public class ResourcePack {
         this.contentId = contentId;
         this.scripting = scripting;
         this.raytracingCapable = raytracingCapable;
-        this.compressedData = new byte[(int) compressedSize];
+        this.compressedDataLength = (int) compressedSize;
         this.type = type;
     }
 
     public boolean processDataChunk(final int chunkIndex, final byte[] data) throws NoSuchAlgorithmException, IOException, InvalidAlgorithmParameterException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
-        if (this.receivedChunks[chunkIndex]) {
-            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Received duplicate resource pack chunk data: " + this.packId);
+        if (this.download == null) {
+            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Received resource pack chunk data without download info: " + this.packId);
             return false;
         }
-
-        final int offset = chunkIndex * this.maxChunkSize;
-        if (offset + data.length > this.compressedData.length) {
-            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Received resource pack chunk data with invalid offset: " + this.packId);
+        if (!this.download.write(chunkIndex, data)) {
             return false;
         }
-        System.arraycopy(data, 0, this.compressedData, offset, data.length);
-        this.receivedChunks[chunkIndex] = true;
 
-        if (this.hasReceivedAllChunks()) {
-            this.decompressAndDecrypt();
+        if (this.download.isComplete()) {
+            final byte[] compressedData = this.download.finish();
+            this.download = null;
+            this.decompressAndDecrypt(compressedData);
             return true;
         }
 
         return false;
     }
 
+    /**
+     * @return The index of the next chunk which should be requested or -1 if there is none
+     */
+    public int nextChunkRequest() {
+        if (this.download == null) {
+            return -1;
+        }
+
+        return this.download.nextChunkRequest();
+    }
+
+    /**
+     * Closes the running download. File backed downloads can be resumed later.
+     */
+    public void closeDownload() throws IOException {
+        if (this.download != null) {
+            this.download.close();
+            this.download = null;
+        }
+    }
+
+    private void closeDownloadQuietly() {
+        try {
+            this.closeDownload();
+        } catch (IOException e) {
+            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Failed to close resource pack download: " + this.packId, e);
+        }
+    }
+
     public boolean isDecompressed() {
-        return this.compressedData == null;
+        return this.content != null;
     }
 
     public UUID packId() {
@@ -154,6 +198,10 @@ public class ResourcePack {
         return this.raytracingCapable;
     }
 
+    public byte[] hash() {
+        return this.hash;
+    }
+
     public void setHash(final byte[] hash) {
         this.hash = hash;
     }
@@ -175,17 +223,36 @@ public class ResourcePack {
     }
 
     public int compressedDataLength() {
-        if (this.compressedData == null) {
-            return 0;
-        }
-
-        return this.compressedData.length;
+        return this.compressedDataLength;
     }
 
     public void setCompressedDataLength(final int length, final int maxChunkSize) {
-        this.compressedData = new byte[length];
-        this.maxChunkSize = maxChunkSize;
-        this.receivedChunks = new boolean[MathUtil.ceil((float) this.compressedData.length / maxChunkSize)];
+        this.compressedDataLength = length;
+        this.download = new ResourcePackDownload(this.packId, length, maxChunkSize, this.hash);
+    }
+
+    /**
+     * Starts a download which writes the received chunks to the given file.<br>
+     * If the file contains a previous partial download of the same pack, the download is resumed.
+     *
+     * @param length       The compressed length of the pack
+     * @param maxChunkSize The maximum size of a chunk
+     * @param file         The download file
+     */
+    public void setCompressedDataLength(final int length, final int maxChunkSize, final File file) throws IOException {
+        this.compressedDataLength = length;
+        this.download = new ResourcePackDownload(this.packId, length, maxChunkSize, this.hash, file);
+    }
+
+    /**
+     * @return The key under which the content of this pack is shared by the {@link ResourcePackStore}, or null if it hasn't been looked up yet
+     */
+    public String storeKey() {
+        return this.storeKey;
+    }
+
+    public void setStoreKey(final String storeKey) {
+        this.storeKey = storeKey;
     }
 
     public Content content() {
@@ -196,41 +263,31 @@ public class ResourcePack {
         return this.content;
     }
 
-    private void decompressAndDecrypt() throws NoSuchAlgorithmException, IOException, NoSuchPaddingException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
-        if (this.hash != null) {
-            final MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-            final byte[] hash = sha256.digest(this.compressedData);
-            if (!Arrays.equals(hash, this.hash)) {
-                throw new IllegalStateException("Resource pack hash mismatch: " + this.packId);
-            }
-        }
+    public byte[] contentHash() {
+        return this.content().hash();
+    }
 
-        this.content = new Content();
-        final ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(this.compressedData));
-        ZipEntry zipEntry;
-        int len;
-        final byte[] buf = new byte[4096];
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        while ((zipEntry = zipInputStream.getNextEntry()) != null) {
-            while ((len = zipInputStream.read(buf)) > 0) {
-                baos.write(buf, 0, len);
-            }
-            this.content.put(zipEntry.getName(), baos.toByteArray());
-            baos.reset();
-        }
-        this.compressedData = null;
+    /**
+     * Sets the content of this pack directly, for example if it has been restored by a {@link net.raphimc.viabedrock.protocol.providers.ResourcePackProvider}.
+     *
+     * @param content The content
+     */
+    public void setContent(final Content content) {
+        this.closeDownloadQuietly();
+        this.content = content;
+    }
+
+    private void decompressAndDecrypt(final byte[] compressedData) throws IOException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        // The compressed data is kept as the backing archive of the content
+        this.content = Content.fromZip(ByteBuffer.wrap(compressedData));
 
         if (!this.content.containsKey("manifest.json")) {
-            for (String path : new HashSet<>(this.content.keySet())) {
-                final String newPath = path.substring(path.indexOf('/') + 1);
-                this.content.put(newPath, this.content.remove(path));
+            for (String path : this.content.keySet()) {
+                this.content.rename(path, path.substring(path.indexOf('/') + 1));
             }
         }
 
         if (!this.contentKey.isEmpty()) {
-            final Cipher aesCfb8 = Cipher.getInstance("AES/CFB8/NoPadding");
-            final byte[] contentKeyBytes = this.contentKey.getBytes(StandardCharsets.ISO_8859_1);
-            aesCfb8.init(Cipher.DECRYPT_MODE, new SecretKeySpec(contentKeyBytes, "AES"), new IvParameterSpec(Arrays.copyOfRange(contentKeyBytes, 0, 16)));
             final ByteBuf contents = Unpooled.wrappedBuffer(this.content.get("contents.json"));
             contents.skipBytes(4); // version
             final byte[] magic = new byte[4];
@@ -249,7 +306,7 @@ public class ResourcePack {
             contents.readerIndex(256);
             final byte[] encryptedContents = new byte[contents.readableBytes()];
             contents.readBytes(encryptedContents); // encrypted contents.json
-            this.content.put("contents.json", aesCfb8.doFinal(encryptedContents));
+            this.content.put("contents.json", decrypt(this.contentKey.getBytes(StandardCharsets.ISO_8859_1), encryptedContents));
 
             final JsonObject contentsJson = this.content.getJson("contents.json");
             final JsonArray contentArray = contentsJson.getAsJsonArray("content");
@@ -269,10 +326,8 @@ public class ResourcePack {
                         continue;
                 }
 
-                final byte[] encryptedData = this.content.get(path);
-                final byte[] keyBytes = key.getBytes(StandardCharsets.ISO_8859_1);
-                aesCfb8.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keyBytes, "AES"), new IvParameterSpec(Arrays.copyOfRange(keyBytes, 0, 16)));
-                this.content.put(path, aesCfb8.doFinal(encryptedData));
+                // Entries are decrypted when they are accessed
+                this.content.setDecryptionKey(path, key.getBytes(StandardCharsets.ISO_8859_1));
             }
         }
 
@@ -299,18 +354,275 @@ public class ResourcePack {
         }
     }
 
-    private boolean hasReceivedAllChunks() {
-        for (final boolean receivedChunk : this.receivedChunks) {
-            if (!receivedChunk) {
+    private static byte[] decrypt(final byte[] key, final byte[] data) throws InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        final Cipher aesCfb8 = AES_CFB8.get();
+        aesCfb8.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(Arrays.copyOfRange(key, 0, 16)));
+        return aesCfb8.doFinal(data);
+    }
+
+    public static class Content {
+
+        private final Map<String, byte[]> entries = new HashMap<>();
+        private final Map<String, ZipIndex.Entry> lazyEntries = new HashMap<>();
+        private final Map<String, byte[]> decryptionKeys = new HashMap<>();
+        private final Map<String, SoftReference<byte[]>> decryptedEntries = new ConcurrentHashMap<>();
+        private final Map<String, Map<String, String>> langCache = new ConcurrentHashMap<>();
+        private ByteBuffer archive;
+        private volatile boolean frozen;
+        private volatile byte[] hash;
+
+        /**
+         * Creates a content which is backed by the given zip archive.<br>
+         * Entries are only decompressed when they are accessed. Archives which can't be indexed are read eagerly.
+         *
+         * @param archive The zip archive
+         * @return The content
+         * @throws IOException If the archive is malformed
+         */
+        public static Content fromZip(final ByteBuffer archive) throws IOException {
+            final Content content = new Content();
+            final Map<String, ZipIndex.Entry> entries = ZipIndex.read(archive);
+            if (entries != null) {
+                content.archive = archive;
+                content.lazyEntries.putAll(entries);
+            } else {
+                final ZipInputStream zipInputStream = new ZipInputStream(new ByteBufInputStream(Unpooled.wrappedBuffer(archive.duplicate())));
+                ZipEntry zipEntry;
+                int len;
+                final byte[] buf = new byte[4096];
+                final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                    while ((len = zipInputStream.read(buf)) > 0) {
+                        baos.write(buf, 0, len);
+                    }
+                    content.put(zipEntry.getName(), baos.toByteArray());
+                    baos.reset();
+                }
+            }
+            return content;
+        }
+
+        /**
+         * Restores a content from its backing zip archive and an index written by {@link #writeIndex(DataOutputStream)}.<br>
+         * The archive is neither parsed nor validated again.
+         *
+         * @param archive         The zip archive
+         * @param dataInputStream The index
+         * @return The content
+         * @throws IOException If the index is malformed
+         */
+        public static Content readIndex(final ByteBuffer archive, final DataInputStream dataInputStream) throws IOException {
+            final Content content = new Content();
+            content.archive = archive;
+            final int lazyEntryCount = dataInputStream.readInt();
+            for (int i = 0; i < lazyEntryCount; i++) {
+                final String path = dataInputStream.readUTF();
+                final String name = dataInputStream.readUTF();
+                final int method = dataInputStream.readUnsignedShort();
+                final int crc = dataInputStream.readInt();
+                final int compressedSize = dataInputStream.readInt();
+                final int size = dataInputStream.readInt();
+                final int localHeaderOffset = dataInputStream.readInt();
+                if (localHeaderOffset < 0 || compressedSize < 0 || size < 0 || (long) localHeaderOffset + compressedSize > archive.limit()) {
+                    throw new IOException("Invalid index entry: " + path);
+                }
+                try {
+                    content.lazyEntries.put(path, new ZipIndex.Entry(archive, name, method, crc, compressedSize, size, localHeaderOffset));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid index entry: " + path, e);
+                }
+            }
+            final int entryCount = dataInputStream.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                final String path = dataInputStream.readUTF();
+                final byte[] data = new byte[dataInputStream.readInt()];
+                dataInputStream.readFully(data);
+                content.entries.put(path, data);
+            }
+            final int decryptionKeyCount = dataInputStream.readInt();
+            for (int i = 0; i < decryptionKeyCount; i++) {
+                final String path = dataInputStream.readUTF();
+                final byte[] key = new byte[dataInputStream.readUnsignedShort()];
+                dataInputStream.readFully(key);
+                content.decryptionKeys.put(path, key);
+            }
+            return content;
+        }
+
+        /**
+         * Writes an index of this content which allows to restore it from its backing zip archive using {@link #readIndex(ByteBuffer, DataInputStream)}.
+         *
+         * @param dataOutputStream The output
+         * @return false if this content isn't backed by a zip archive and nothing has been written
+         * @throws IOException If an I/O error occurs
+         */
+        public boolean writeIndex(final DataOutputStream dataOutputStream) throws IOException {
+            if (this.archive == null) {
                 return false;
             }
+
+            dataOutputStream.writeInt(this.lazyEntries.size());
+            for (Map.Entry<String, ZipIndex.Entry> entry : this.lazyEntries.entrySet()) {
+                final ZipIndex.Entry lazyEntry = entry.getValue();
+                dataOutputStream.writeUTF(entry.getKey());
+                dataOutputStream.writeUTF(lazyEntry.name());
+                dataOutputStream.writeShort(lazyEntry.method());
+                dataOutputStream.writeInt(lazyEntry.crc());
+                dataOutputStream.writeInt(lazyEntry.compressedSize());
+                dataOutputStream.writeInt(lazyEntry.size());
+                dataOutputStream.writeInt(lazyEntry.localHeaderOffset());
+            }
+            dataOutputStream.writeInt(this.entries.size());
+            for (Map.Entry<String, byte[]> entry : this.entries.entrySet()) {
+                dataOutputStream.writeUTF(entry.getKey());
+                dataOutputStream.writeInt(entry.getValue().length);
+                dataOutputStream.write(entry.getValue());
+            }
+            dataOutputStream.writeInt(this.decryptionKeys.size());
+            for (Map.Entry<String, byte[]> entry : this.decryptionKeys.entrySet()) {
+                dataOutputStream.writeUTF(entry.getKey());
+                dataOutputStream.writeShort(entry.getValue().length);
+                dataOutputStream.write(entry.getValue());
+            }
+            return true;
         }
-        return true;
-    }
 
-    public static class Content extends HashMap<String, byte[]> {
+        /**
+         * @return The zip archive which backs this content or null if the content isn't backed by an archive
+         */
+        public ByteBuffer archive() {
+            return this.archive != null ? this.archive.duplicate() : null;
+        }
 
-        private final Map<String, Map<String, String>> langCache = new HashMap<>();
+        public byte[] get(final String path) {
+            final byte[] decryptionKey = this.decryptionKeys.get(path);
+            if (decryptionKey == null) {
+                return this.getRaw(path);
+            }
+
+            final SoftReference<byte[]> decryptedReference = this.decryptedEntries.get(path);
+            byte[] data = decryptedReference != null ? decryptedReference.get() : null;
+            if (data == null) {
+                try {
+                    data = decrypt(decryptionKey, this.getRaw(path));
+                } catch (GeneralSecurityException e) {
+                    throw new RuntimeException(e);
+                }
+                this.decryptedEntries.put(path, new SoftReference<>(data));
+            }
+            return data;
+        }
+
+        public boolean put(final String path, final byte[] data) {
+            this.checkMutable();
+            this.decryptionKeys.remove(path);
+            this.decryptedEntries.remove(path);
+            final boolean replacedLazyEntry = this.lazyEntries.remove(path) != null;
+            return this.entries.put(path, data) != null || replacedLazyEntry;
+        }
+
+        public byte[] remove(final String path) {
+            this.checkMutable();
+            final byte[] data = this.get(path);
+            this.entries.remove(path);
+            this.lazyEntries.remove(path);
+            this.decryptionKeys.remove(path);
+            this.decryptedEntries.remove(path);
+            return data;
+        }
+
+        /**
+         * Marks an entry as encrypted. It will be decrypted with AES/CFB8 when it is accessed.
+         *
+         * @param path The path of the entry
+         * @param key  The AES key of the entry
+         */
+        public void setDecryptionKey(final String path, final byte[] key) {
+            this.checkMutable();
+            this.decryptionKeys.put(path, key);
+            this.decryptedEntries.remove(path);
+        }
+
+        private byte[] getRaw(final String path) {
+            final byte[] data = this.entries.get(path);
+            if (data != null) {
+                return data;
+            }
+
+            final ZipIndex.Entry lazyEntry = this.lazyEntries.get(path);
+            if (lazyEntry == null) {
+                return null;
+            }
+            try {
+                return lazyEntry.getData();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Moves an entry to a new path without decompressing it.
+         *
+         * @param path    The current path
+         * @param newPath The new path
+         */
+        public void rename(final String path, final String newPath) {
+            this.checkMutable();
+            if (path.equals(newPath)) return;
+
+            final byte[] data = this.entries.remove(path);
+            final ZipIndex.Entry lazyEntry = this.lazyEntries.remove(path);
+            final byte[] decryptionKey = this.decryptionKeys.remove(path);
+            this.decryptedEntries.remove(path);
+            if (data == null && lazyEntry == null) return;
+
+            this.entries.remove(newPath);
+            this.lazyEntries.remove(newPath);
+            this.decryptionKeys.remove(newPath);
+            this.decryptedEntries.remove(newPath);
+            if (data != null) {
+                this.entries.put(newPath, data);
+            } else {
+                this.lazyEntries.put(newPath, lazyEntry);
+            }
+            if (decryptionKey != null) {
+                this.decryptionKeys.put(newPath, decryptionKey);
+            }
+        }
+
+        /**
+         * Makes this content immutable, so it can be shared between connections.
+         */
+        public void freeze() {
+            this.frozen = true;
+        }
+
+        public boolean isFrozen() {
+            return this.frozen;
+        }
+
+        private void checkMutable() {
+            if (this.frozen) {
+                throw new UnsupportedOperationException("Content is immutable");
+            }
+        }
+
+        public boolean containsKey(final String path) {
+            return this.entries.containsKey(path) || this.lazyEntries.containsKey(path);
+        }
+
+        /**
+         * @return A snapshot of all paths in this content
+         */
+        public Set<String> keySet() {
+            final Set<String> paths = new HashSet<>(this.entries.keySet());
+            paths.addAll(this.lazyEntries.keySet());
+            return paths;
+        }
+
+        public int size() {
+            return this.entries.size() + this.lazyEntries.size();
+        }
 
         public String getString(final String path) {
             final byte[] bytes = this.get(path);
@@ -322,7 +634,7 @@ public class ResourcePack {
         }
 
         public boolean putString(final String path, final String string) {
-            return this.put(path, string.getBytes(StandardCharsets.UTF_8)) != null;
+            return this.put(path, string.getBytes(StandardCharsets.UTF_8));
         }
 
         public List<String> getLines(final String path) {
@@ -352,10 +664,11 @@ public class ResourcePack {
         }
 
         public boolean putLang(final String path, final Map<String, String> lang) {
+            this.checkMutable();
             this.langCache.put(path, lang);
 
             final List<String> lines = new ArrayList<>();
-            for (Entry<String, String> entry : lang.entrySet()) {
+            for (Map.Entry<String, String> entry : lang.entrySet()) {
                 lines.add(entry.getKey() + "=" + entry.getValue());
             }
             return this.putLines(path, lines);
@@ -398,19 +711,70 @@ public class ResourcePack {
             } catch (final IOException e) {
                 throw new RuntimeException(e);
             }
-            return this.put(path, baos.toByteArray()) != null;
+            return this.put(path, baos.toByteArray());
+        }
+
+        /**
+         * Hashes the content. Entries which haven't been decompressed yet are identified by their CRC32 and size instead of their data.
+         *
+         * @return The SHA-1 hash of the content
+         */
+        public byte[] hash() {
+            if (this.hash != null) {
+                return this.hash;
+            }
+
+            try {
+                final MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+                final List<String> paths = new ArrayList<>(this.keySet());
+                Collections.sort(paths);
+                for (String path : paths) {
+                    sha1.update(path.getBytes(StandardCharsets.UTF_8));
+                    final byte[] decryptionKey = this.decryptionKeys.get(path);
+                    if (decryptionKey != null) {
+                        sha1.update((byte) 2);
+                        sha1.update(decryptionKey);
+                    }
+                    final ZipIndex.Entry lazyEntry = this.lazyEntries.get(path);
+                    if (lazyEntry != null) {
+                        sha1.update((byte) 1);
+                        sha1.update(ByteBuffer.allocate(Integer.BYTES * 2).putInt(lazyEntry.crc()).putInt(lazyEntry.size()).array());
+                    } else {
+                        final byte[] data = this.entries.get(path);
+                        sha1.update((byte) 0);
+                        sha1.update(ByteBuffer.allocate(Integer.BYTES).putInt(data.length).array());
+                        sha1.update(data);
+                    }
+                }
+                final byte[] hash = sha1.digest();
+                if (this.frozen) {
+                    this.hash = hash;
+                }
+                return hash;
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
         }
 
         public byte[] toZip() throws IOException {
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream(4 * 1024 * 1024);
-            final ZipOutputStream zipOutputStream = new ZipOutputStream(baos);
-            for (final Map.Entry<String, byte[]> entry : this.entrySet()) {
-                zipOutputStream.putNextEntry(new ZipEntry(entry.getKey()));
-                zipOutputStream.write(entry.getValue());
-                zipOutputStream.closeEntry();
-            }
-            zipOutputStream.close();
-            return baos.toByteArray();
+            return ZipWriter.toByteArray(this.getSortedPaths(), this::get, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        /**
+         * Writes this content as a zip archive to a stream without holding the whole archive in memory.
+         *
+         * @param outputStream     The output
+         * @param compressionLevel The deflate compression level for files which aren't already compressed
+         * @throws IOException If an I/O error occurs
+         */
+        public void toZip(final OutputStream outputStream, final int compressionLevel) throws IOException {
+            ZipWriter.write(outputStream, this.getSortedPaths(), this::get, compressionLevel);
+        }
+
+        private List<String> getSortedPaths() {
+            final List<String> paths = new ArrayList<>(this.keySet());
+            Collections.sort(paths);
+            return paths;
         }
 
     }
@@ -0,0 +1,208 @@
+/*
+ * This file is part of ViaBedrock - https://github.com/RaphiMC/ViaBedrock
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viabedrock.api.model;
+
+import net.raphimc.viabedrock.ViaBedrock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Receives the compressed data of a resource pack chunk by chunk.<br>
+ * The data is either kept in memory or written to a file. File backed downloads keep their verified prefix when they are closed, so they can be resumed later.
+ */
+public class ResourcePackDownload {
+
+    private final UUID packId;
+    private final int length;
+    private final int maxChunkSize;
+    private final int chunkCount;
+    private final byte[] expectedHash;
+    private final MessageDigest sha256;
+    private final BitSet receivedChunks;
+    private final BitSet requestedChunks;
+
+    private final byte[] data;
+    private final File file;
+    private final FileChannel fileChannel;
+
+    private int hashedChunks;
+
+    public ResourcePackDownload(final UUID packId, final int length, final int maxChunkSize, final byte[] expectedHash) {
+        this(packId, length, maxChunkSize, expectedHash, new byte[length], null, null);
+    }
+
+    public ResourcePackDownload(final UUID packId, final int length, final int maxChunkSize, final byte[] expectedHash, final File file) throws IOException {
+        this(packId, length, maxChunkSize, expectedHash, null, file, FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+
+        // Only resume if the data can be verified. The last chunk is always requested again, so the download is completed through the regular path.
+        final int resumedChunks = this.expectedHash != null ? (int) Math.min(this.fileChannel.size() / maxChunkSize, Math.max(this.chunkCount - 1, 0)) : 0;
+        this.fileChannel.truncate((long) resumedChunks * maxChunkSize);
+        for (int i = 0; i < resumedChunks; i++) {
+            this.sha256.update(this.readChunk(i));
+        }
+        this.receivedChunks.set(0, resumedChunks);
+        this.requestedChunks.set(0, resumedChunks);
+        this.hashedChunks = resumedChunks;
+        if (resumedChunks > 0) {
+            ViaBedrock.getPlatform().getLogger().log(Level.INFO, "Resuming resource pack download at chunk " + resumedChunks + "/" + this.chunkCount + ": " + packId);
+        }
+    }
+
+    private ResourcePackDownload(final UUID packId, final int length, final int maxChunkSize, final byte[] expectedHash, final byte[] data, final File file, final FileChannel fileChannel) {
+        this.packId = packId;
+        this.length = length;
+        this.maxChunkSize = maxChunkSize;
+        this.chunkCount = (int) (((long) length + maxChunkSize - 1) / maxChunkSize);
+        this.expectedHash = expectedHash != null && expectedHash.length != 0 ? expectedHash : null;
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        this.receivedChunks = new BitSet(this.chunkCount);
+        this.requestedChunks = new BitSet(this.chunkCount);
+
+        this.data = data;
+        this.file = file;
+        this.fileChannel = fileChannel;
+    }
+
+    /**
+     * @return The index of the next chunk which should be requested or -1 if all chunks have been requested
+     */
+    public int nextChunkRequest() {
+        final int chunkIndex = this.requestedChunks.nextClearBit(0);
+        if (chunkIndex >= this.chunkCount) {
+            return -1;
+        }
+
+        this.requestedChunks.set(chunkIndex);
+        return chunkIndex;
+    }
+
+    /**
+     * @param chunkIndex The index of the chunk
+     * @param chunk      The data of the chunk
+     * @return true if the chunk was accepted
+     */
+    public boolean write(final int chunkIndex, final byte[] chunk) throws IOException {
+        if (chunkIndex < 0 || chunkIndex >= this.chunkCount) {
+            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Received resource pack chunk data with invalid index: " + this.packId);
+            return false;
+        }
+        if (this.receivedChunks.get(chunkIndex)) {
+            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Received duplicate resource pack chunk data: " + this.packId);
+            return false;
+        }
+        final int offset = chunkIndex * this.maxChunkSize;
+        if (chunk.length != Math.min(this.maxChunkSize, this.length - offset)) {
+            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Received resource pack chunk data with invalid length: " + this.packId);
+            return false;
+        }
+
+        if (this.fileChannel != null) {
+            final ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (buffer.hasRemaining()) {
+                this.fileChannel.write(buffer, offset + buffer.position());
+            }
+        } else {
+            System.arraycopy(chunk, 0, this.data, offset, chunk.length);
+        }
+        this.receivedChunks.set(chunkIndex);
+        this.requestedChunks.set(chunkIndex);
+
+        // Chunks usually arrive in order, so they can be hashed right away without reading them back
+        while (this.hashedChunks < this.chunkCount && this.receivedChunks.get(this.hashedChunks)) {
+            this.sha256.update(this.hashedChunks == chunkIndex ? chunk : this.readChunk(this.hashedChunks));
+            this.hashedChunks++;
+        }
+        return true;
+    }
+
+    public boolean isComplete() {
+        return this.receivedChunks.nextClearBit(0) >= this.chunkCount;
+    }
+
+    /**
+     * Verifies the downloaded data and removes the download file.
+     *
+     * @return The compressed data of the pack
+     */
+    public byte[] finish() throws IOException {
+        if (!this.isComplete()) {
+            throw new IllegalStateException("Resource pack download is not complete: " + this.packId);
+        }
+
+        final byte[] data;
+        if (this.fileChannel != null) {
+            data = new byte[this.length];
+            final ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                if (this.fileChannel.read(buffer, buffer.position()) == -1) {
+                    throw new IOException("Resource pack download file is truncated: " + this.packId);
+                }
+            }
+            this.fileChannel.close();
+            this.file.delete();
+        } else {
+            data = this.data;
+        }
+
+        if (this.expectedHash != null && !Arrays.equals(this.sha256.digest(), this.expectedHash)) {
+            throw new IllegalStateException("Resource pack hash mismatch: " + this.packId);
+        }
+        return data;
+    }
+
+    /**
+     * Closes the download. File backed downloads are truncated to their verified prefix, so they can be resumed.
+     */
+    public void close() throws IOException {
+        if (this.fileChannel != null && this.fileChannel.isOpen()) {
+            this.fileChannel.truncate(Math.min((long) this.hashedChunks * this.maxChunkSize, this.length));
+            this.fileChannel.close();
+        }
+    }
+
+    private byte[] readChunk(final int chunkIndex) throws IOException {
+        final int offset = chunkIndex * this.maxChunkSize;
+        final byte[] chunk = new byte[Math.min(this.maxChunkSize, this.length - offset)];
+        if (this.fileChannel != null) {
+            final ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (buffer.hasRemaining()) {
+                if (this.fileChannel.read(buffer, offset + buffer.position()) == -1) {
+                    throw new IOException("Resource pack download file is truncated: " + this.packId);
+                }
+            }
+        } else {
+            System.arraycopy(this.data, offset, chunk, 0, chunk.length);
+        }
+        return chunk;
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of ViaBedrock - https://github.com/RaphiMC/ViaBedrock
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viabedrock.api.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares the loaded content of server resource packs between all connections.<br>
+ * Contents are reference counted and dropped once no connection uses them anymore.
+ */
+public class ResourcePackStore {
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Attaches the shared content of the given pack if it is already loaded.
+     *
+     * @param pack The pack
+     * @return true if the shared content has been attached and the pack doesn't have to be loaded
+     */
+    public synchronized boolean acquire(final ResourcePack pack) {
+        final Entry entry = this.entries.get(this.getKey(pack));
+        if (entry == null) {
+            return false;
+        }
+
+        entry.references++;
+        pack.setContent(entry.content);
+        return true;
+    }
+
+    /**
+     * Makes the content of a freshly loaded pack available to other connections.<br>
+     * If another connection loaded the same pack in the meantime, the given pack is switched over to that content.
+     *
+     * @param pack The loaded pack
+     */
+    public synchronized void share(final ResourcePack pack) {
+        final String key = this.getKey(pack);
+        final Entry entry = this.entries.get(key);
+        if (entry != null && (entry.hash == null || pack.hash() == null || Arrays.equals(entry.hash, pack.hash()))) {
+            if (entry.hash == null) {
+                entry.hash = pack.hash();
+            }
+            entry.references++;
+            pack.setContent(entry.content);
+        } else { // A pack with a different hash under the same key replaces the shared content for new connections
+            final ResourcePack.Content content = pack.content();
+            content.freeze();
+            this.entries.put(key, new Entry(content, pack.hash()));
+        }
+    }
+
+    /**
+     * Releases the content of a pack which has been attached by {@link #acquire(ResourcePack)} or {@link #share(ResourcePack)}.
+     *
+     * @param pack The pack
+     */
+    public synchronized void release(final ResourcePack pack) {
+        final String key = this.getKey(pack);
+        final Entry entry = this.entries.get(key);
+        if (entry != null && pack.isDecompressed() && entry.content == pack.content() && --entry.references == 0) {
+            this.entries.remove(key);
+        }
+    }
+
+    private String getKey(final ResourcePack pack) {
+        if (pack.storeKey() == null) {
+            // The SHA-256 hash of the pack is only known once it is being downloaded, so the compressed size which is announced along with the pack is used instead.
+            // The key is captured on first use, because providers replace the announced size with the size of the archive they load.
+            pack.setStoreKey(pack.packId() + "_" + pack.version() + "_" + pack.compressedDataLength());
+        }
+        return pack.storeKey();
+    }
+
+    private static class Entry {
+
+        private final ResourcePack.Content content;
+        private byte[] hash;
+        private int references = 1;
+
+        private Entry(final ResourcePack.Content content, final byte[] hash) {
+            this.content = content;
+            this.hash = hash;
+        }
+
+    }
+
+}
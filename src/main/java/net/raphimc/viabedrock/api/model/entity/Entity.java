@@ -19,6 +19,11 @@ package net.raphimc.viabedrock.api.model.entity;
 
 import com.viaversion.viaversion.api.connection.UserConnection;
 import com.viaversion.viaversion.api.minecraft.entities.EntityTypes1_20_3;
+import com.viaversion.viaversion.api.protocol.packet.PacketWrapper;
+import com.viaversion.viaversion.api.type.Type;
+import com.viaversion.viaversion.protocols.protocol1_20_3to1_20_2.packet.ClientboundPackets1_20_3;
+import net.raphimc.viabedrock.api.util.MathUtil;
+import net.raphimc.viabedrock.protocol.BedrockProtocol;
 import net.raphimc.viabedrock.protocol.model.Position3f;
 
 import java.util.UUID;
@@ -44,6 +49,19 @@ public class Entity {
     protected String name;
     protected int age;
 
+    /**
+     * The position, rotation and head yaw which have been sent to the java client last. The position is encoded like in the relative move packets.
+     */
+    private boolean hasJavaPosition;
+    private long javaX;
+    private long javaY;
+    private long javaZ;
+    private byte javaYaw;
+    private byte javaPitch;
+    private boolean javaOnGround;
+    private boolean hasJavaHeadYaw;
+    private byte javaHeadYaw;
+
     public Entity(final UserConnection user, final long uniqueId, final long runtimeId, final int javaId, final UUID javaUuid, final EntityTypes1_20_3 type) {
         this.user = user;
         this.uniqueId = uniqueId;
@@ -57,6 +75,96 @@ public class Entity {
         this.age++;
     }
 
+    /**
+     * Writes the movement of this entity since the last sent position into the given wrapper and sets its packet type accordingly.<br>
+     * Relative move packets are used if the movement fits into their fixed point range. Otherwise, or if the position is unknown to the java client, the entity is teleported.
+     * The wrapper is cancelled if neither the position, the rotation nor the on ground state changed.
+     *
+     * @param wrapper  The packet wrapper
+     * @param teleport If the entity should be teleported regardless of the movement, for example because the position shouldn't be interpolated
+     */
+    public void writeMovementPacketToClient(final PacketWrapper wrapper, final boolean teleport) {
+        final long x = encodeJavaPosition(this.position.x());
+        final long y = encodeJavaPosition(this.position.y() - this.eyeOffset());
+        final long z = encodeJavaPosition(this.position.z());
+        final byte yaw = MathUtil.float2Byte(this.rotation.y());
+        final byte pitch = MathUtil.float2Byte(this.rotation.x());
+        final long deltaX = x - this.javaX;
+        final long deltaY = y - this.javaY;
+        final long deltaZ = z - this.javaZ;
+        final boolean moved = deltaX != 0 || deltaY != 0 || deltaZ != 0;
+        final boolean rotated = yaw != this.javaYaw || pitch != this.javaPitch;
+
+        if (teleport || !this.hasJavaPosition || !isShort(deltaX) || !isShort(deltaY) || !isShort(deltaZ)) {
+            wrapper.setPacketType(ClientboundPackets1_20_3.ENTITY_TELEPORT);
+            wrapper.write(Type.VAR_INT, this.javaId); // entity id
+            wrapper.write(Type.DOUBLE, (double) this.position.x()); // x
+            wrapper.write(Type.DOUBLE, (double) this.position.y() - this.eyeOffset()); // y
+            wrapper.write(Type.DOUBLE, (double) this.position.z()); // z
+            wrapper.write(Type.BYTE, yaw); // yaw
+            wrapper.write(Type.BYTE, pitch); // pitch
+            wrapper.write(Type.BOOLEAN, this.onGround); // on ground
+            this.hasJavaPosition = true;
+        } else if (moved && rotated) {
+            wrapper.setPacketType(ClientboundPackets1_20_3.ENTITY_POSITION_AND_ROTATION);
+            wrapper.write(Type.VAR_INT, this.javaId); // entity id
+            wrapper.write(Type.SHORT, (short) deltaX); // delta x
+            wrapper.write(Type.SHORT, (short) deltaY); // delta y
+            wrapper.write(Type.SHORT, (short) deltaZ); // delta z
+            wrapper.write(Type.BYTE, yaw); // yaw
+            wrapper.write(Type.BYTE, pitch); // pitch
+            wrapper.write(Type.BOOLEAN, this.onGround); // on ground
+        } else if (rotated) {
+            wrapper.setPacketType(ClientboundPackets1_20_3.ENTITY_ROTATION);
+            wrapper.write(Type.VAR_INT, this.javaId); // entity id
+            wrapper.write(Type.BYTE, yaw); // yaw
+            wrapper.write(Type.BYTE, pitch); // pitch
+            wrapper.write(Type.BOOLEAN, this.onGround); // on ground
+        } else if (moved || this.onGround != this.javaOnGround) {
+            wrapper.setPacketType(ClientboundPackets1_20_3.ENTITY_POSITION);
+            wrapper.write(Type.VAR_INT, this.javaId); // entity id
+            wrapper.write(Type.SHORT, (short) deltaX); // delta x
+            wrapper.write(Type.SHORT, (short) deltaY); // delta y
+            wrapper.write(Type.SHORT, (short) deltaZ); // delta z
+            wrapper.write(Type.BOOLEAN, this.onGround); // on ground
+        } else {
+            wrapper.cancel();
+            return;
+        }
+
+        this.javaX = x;
+        this.javaY = y;
+        this.javaZ = z;
+        this.javaYaw = yaw;
+        this.javaPitch = pitch;
+        this.javaOnGround = this.onGround;
+    }
+
+    /**
+     * Sends the head yaw of this entity to the java client if it changed since it has been sent last.
+     */
+    public void sendHeadYawPacketToClient() throws Exception {
+        final byte headYaw = MathUtil.float2Byte(this.rotation.z());
+        if (this.hasJavaHeadYaw && headYaw == this.javaHeadYaw) {
+            return;
+        }
+        this.hasJavaHeadYaw = true;
+        this.javaHeadYaw = headYaw;
+
+        final PacketWrapper entityHeadLook = PacketWrapper.create(ClientboundPackets1_20_3.ENTITY_HEAD_LOOK, this.user);
+        entityHeadLook.write(Type.VAR_INT, this.javaId); // entity id
+        entityHeadLook.write(Type.BYTE, headYaw); // head yaw
+        entityHeadLook.send(BedrockProtocol.class);
+    }
+
+    private static long encodeJavaPosition(final double value) {
+        return Math.round(value * 4096D);
+    }
+
+    private static boolean isShort(final long value) {
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+
     public float eyeOffset() {
         return 0F;
     }
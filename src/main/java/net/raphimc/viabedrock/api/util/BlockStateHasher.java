@@ -17,38 +17,122 @@
  */
 package net.raphimc.viabedrock.api.util;
 
-import com.viaversion.viaversion.libs.opennbt.tag.builtin.CompoundTag;
-import com.viaversion.viaversion.libs.opennbt.tag.builtin.StringTag;
+import com.viaversion.viaversion.libs.opennbt.tag.builtin.*;
 import com.viaversion.viaversion.util.Key;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
-import net.raphimc.viabedrock.protocol.types.BedrockTypes;
+import net.raphimc.viabedrock.api.io.LittleEndianByteBufOutputStream;
 
-import java.util.TreeMap;
+import java.util.Arrays;
 
+/**
+ * Hashes block states the same way as the Mojang client.<br>
+ * The hash is the FNV1a 32 of the little endian NBT encoding of {name, states} with sorted states.
+ * The encoding is fed into the hash directly instead of being serialized into a buffer first.
+ */
 public class BlockStateHasher {
 
+    private static final int STRING_TAG_ID = 8;
+    private static final int COMPOUND_TAG_ID = 10;
+
     public static int hash(final CompoundTag blockStateTag) {
-        final String name = Key.namespaced(blockStateTag.<StringTag>get("name").getValue());
-        if (name.equals("minecraft:unknown")) {
+        final StringTag nameTag = blockStateTag.get("name");
+        if (Key.namespaced(nameTag.getValue()).equals("minecraft:unknown")) {
             return -2;
         }
+        final CompoundTag statesTag = blockStateTag.get("states");
+
+        int hash = FNV1.fnv1a_32_init();
+        hash = FNV1.fnv1a_32(hash, COMPOUND_TAG_ID); // Root tag
+        hash = hashString(hash, "");
+        hash = hashTagHeader(hash, STRING_TAG_ID, "name");
+        hash = hashString(hash, nameTag.getValue());
+        hash = hashTagHeader(hash, COMPOUND_TAG_ID, "states");
+        if (statesTag != null) {
+            final String[] keys = statesTag.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            for (String key : keys) {
+                final Tag tag = statesTag.get(key);
+                hash = hashTagHeader(hash, tag.getTagId(), key);
+                hash = hashTagPayload(hash, tag);
+            }
+        }
+        hash = FNV1.fnv1a_32(hash, 0); // End of states
+        hash = FNV1.fnv1a_32(hash, 0); // End of root tag
+        return hash;
+    }
 
-        final CompoundTag cleanedBlockStateTag = new CompoundTag();
-        cleanedBlockStateTag.put("name", blockStateTag.get("name"));
-        cleanedBlockStateTag.put("states", new CompoundTag(new TreeMap<>(blockStateTag.<CompoundTag>get("states").getValue())));
+    private static int hashTagHeader(int hash, final int id, final String name) {
+        hash = FNV1.fnv1a_32(hash, id);
+        return hashString(hash, name);
+    }
 
-        final ByteBuf byteBuf = Unpooled.buffer();
-        try {
-            BedrockTypes.TAG_LE.write(byteBuf, cleanedBlockStateTag);
-        } catch (Throwable e) {
-            throw new RuntimeException(e);
+    private static int hashTagPayload(int hash, final Tag tag) {
+        if (tag instanceof ByteTag) {
+            return FNV1.fnv1a_32(hash, ((ByteTag) tag).asByte());
+        } else if (tag instanceof ShortTag) {
+            return hashShortLE(hash, ((ShortTag) tag).asShort());
+        } else if (tag instanceof IntTag) {
+            return hashIntLE(hash, ((IntTag) tag).asInt());
+        } else if (tag instanceof LongTag) {
+            final long value = ((LongTag) tag).asLong();
+            hash = hashIntLE(hash, (int) value);
+            return hashIntLE(hash, (int) (value >>> 32));
+        } else if (tag instanceof FloatTag) {
+            return hashIntLE(hash, Float.floatToIntBits(((FloatTag) tag).asFloat()));
+        } else if (tag instanceof StringTag) {
+            return hashString(hash, ((StringTag) tag).getValue());
+        } else { // Uncommon in block states, so just serialize it
+            final ByteBuf buffer = Unpooled.buffer();
+            try {
+                tag.write(new LittleEndianByteBufOutputStream(buffer));
+                while (buffer.isReadable()) {
+                    hash = FNV1.fnv1a_32(hash, buffer.readByte());
+                }
+                return hash;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            } finally {
+                buffer.release();
+            }
         }
-        final byte[] bytes = ByteBufUtil.getBytes(byteBuf);
-        byteBuf.release();
+    }
+
+    private static int hashShortLE(int hash, final int value) {
+        hash = FNV1.fnv1a_32(hash, value);
+        return FNV1.fnv1a_32(hash, value >>> 8);
+    }
 
-        return FNV1.fnv1a_32(bytes);
+    private static int hashIntLE(int hash, final int value) {
+        hash = hashShortLE(hash, value);
+        return hashShortLE(hash, value >>> 16);
+    }
+
+    private static int hashString(int hash, final String value) { // Short length prefixed UTF-8
+        hash = hashShortLE(hash, ByteBufUtil.utf8Bytes(value));
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                hash = FNV1.fnv1a_32(hash, c);
+            } else if (c < 0x800) {
+                hash = FNV1.fnv1a_32(hash, 0xC0 | c >> 6);
+                hash = FNV1.fnv1a_32(hash, 0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                hash = FNV1.fnv1a_32(hash, 0xF0 | codePoint >> 18);
+                hash = FNV1.fnv1a_32(hash, 0x80 | codePoint >> 12 & 0x3F);
+                hash = FNV1.fnv1a_32(hash, 0x80 | codePoint >> 6 & 0x3F);
+                hash = FNV1.fnv1a_32(hash, 0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                hash = FNV1.fnv1a_32(hash, '?');
+            } else {
+                hash = FNV1.fnv1a_32(hash, 0xE0 | c >> 12);
+                hash = FNV1.fnv1a_32(hash, 0x80 | c >> 6 & 0x3F);
+                hash = FNV1.fnv1a_32(hash, 0x80 | c & 0x3F);
+            }
+        }
+        return hash;
     }
 
 }
@@ -45,4 +45,12 @@ public class FNV1 {
         return hash;
     }
 
+    public static int fnv1a_32_init() {
+        return FNV1_32_INIT;
+    }
+
+    public static int fnv1a_32(final int hash, final int b) {
+        return (hash ^ (b & 0xff)) * FNV1_PRIME_32;
+    }
+
 }
@@ -18,6 +18,7 @@
 package net.raphimc.viabedrock.api.util;
 
 import com.viaversion.viaversion.api.connection.UserConnection;
+import com.viaversion.viaversion.api.minecraft.BlockChangeRecord;
 import com.viaversion.viaversion.api.minecraft.Position;
 import com.viaversion.viaversion.api.minecraft.blockentity.BlockEntity;
 import com.viaversion.viaversion.api.protocol.packet.PacketWrapper;
@@ -44,6 +45,18 @@ public class PacketFactory {
         return blockEntityData;
     }
 
+    public static PacketWrapper multiBlockChange(final UserConnection user, final int chunkX, final int sectionY, final int chunkZ, final BlockChangeRecord[] changes) {
+        // The section position is packed as 22 bit x, 22 bit z and 20 bit y, all of them signed
+        long sectionPosition = (chunkX & 0x3FFFFFL) << 42;
+        sectionPosition |= (chunkZ & 0x3FFFFFL) << 20;
+        sectionPosition |= sectionY & 0xFFFFFL;
+
+        final PacketWrapper multiBlockChange = PacketWrapper.create(ClientboundPackets1_20_3.MULTI_BLOCK_CHANGE, user);
+        multiBlockChange.write(Type.LONG, sectionPosition); // chunk position
+        multiBlockChange.write(Type.VAR_LONG_BLOCK_CHANGE_RECORD_ARRAY, changes); // block change records
+        return multiBlockChange;
+    }
+
     public static <T extends Throwable> void sendSystemChat(final UserConnection user, final Tag message) throws T {
         try {
             systemChat(user, message).send(BedrockProtocol.class);
@@ -60,6 +73,14 @@ public class PacketFactory {
         }
     }
 
+    public static <T extends Throwable> void sendMultiBlockChange(final UserConnection user, final int chunkX, final int sectionY, final int chunkZ, final BlockChangeRecord[] changes) throws T {
+        try {
+            multiBlockChange(user, chunkX, sectionY, chunkZ, changes).send(BedrockProtocol.class);
+        } catch (Throwable e) {
+            throw (T) e;
+        }
+    }
+
     public static void writeDisconnect(final PacketWrapper wrapper, final String reason) {
         switch (wrapper.getPacketType().state()) {
             case LOGIN:
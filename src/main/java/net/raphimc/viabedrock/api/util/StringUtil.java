@@ -50,4 +50,19 @@ public class StringUtil {
         return builder.toString();
     }
 
+    /**
+     * Encodes a byte array into a lowercase hex string
+     *
+     * @param bytes The bytes to encode
+     * @return The encoded string
+     */
+    public static String toHex(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            chars[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(chars);
+    }
+
 }
@@ -0,0 +1,253 @@
+/*
+ * This file is part of ViaBedrock - https://github.com/RaphiMC/ViaBedrock
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viabedrock.api.util;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Random access to the entries of an in-memory zip archive using its central directory.
+ */
+public class ZipIndex {
+
+    public static final int STORED = 0;
+    public static final int DEFLATED = 8;
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034B50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014B50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054B50;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_DEFLATE_RATIO = 1032; // Upper bound of the deflate format
+    private static final int MAX_ENTRY_SIZE = 256 * 1024 * 1024;
+
+    /**
+     * Reads the central directory of a zip archive without decompressing any entries.
+     *
+     * @param archive The zip archive
+     * @return The entries of the archive or null if the archive uses unsupported features (Zip64, encryption or compression methods other than stored and deflated)
+     * @throws IOException If the archive is malformed
+     */
+    public static Map<String, Entry> read(final ByteBuffer archive) throws IOException {
+        final ByteBuffer buffer = archive.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int endOfCentralDirectory = findEndOfCentralDirectory(buffer);
+        if (endOfCentralDirectory == -1) {
+            throw new ZipException("End of central directory not found");
+        }
+
+        final int entryCount = buffer.getShort(endOfCentralDirectory + 10) & 0xFFFF;
+        final long centralDirectorySize = buffer.getInt(endOfCentralDirectory + 12) & 0xFFFFFFFFL;
+        final long centralDirectoryOffset = buffer.getInt(endOfCentralDirectory + 16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || centralDirectorySize == 0xFFFFFFFFL || centralDirectoryOffset == 0xFFFFFFFFL) {
+            return null; // Zip64
+        }
+        // Offsets are relative to the start of the zip data, which might be preceded by other data
+        final long prefixLength = endOfCentralDirectory - centralDirectorySize - centralDirectoryOffset;
+        if (prefixLength < 0) {
+            throw new ZipException("Invalid central directory offset");
+        }
+
+        final Map<String, Entry> entries = new LinkedHashMap<>(entryCount);
+        int position = (int) (centralDirectoryOffset + prefixLength);
+        for (int i = 0; i < entryCount; i++) {
+            if (position + CENTRAL_DIRECTORY_HEADER_SIZE > buffer.limit() || buffer.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry");
+            }
+            final int flags = buffer.getShort(position + 8) & 0xFFFF;
+            final int method = buffer.getShort(position + 10) & 0xFFFF;
+            final int crc = buffer.getInt(position + 16);
+            final long compressedSize = buffer.getInt(position + 20) & 0xFFFFFFFFL;
+            final long size = buffer.getInt(position + 24) & 0xFFFFFFFFL;
+            final int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+            final int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+            final int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+            final long localHeaderOffset = (buffer.getInt(position + 42) & 0xFFFFFFFFL) + prefixLength;
+            if ((flags & 1) != 0 || (method != STORED && method != DEFLATED) || compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE || localHeaderOffset > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            final byte[] nameBytes = new byte[nameLength];
+            final ByteBuffer nameBuffer = buffer.duplicate();
+            nameBuffer.position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+            nameBuffer.get(nameBytes);
+            final String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            entries.put(name, new Entry(buffer, name, method, crc, (int) compressedSize, (int) size, (int) localHeaderOffset));
+            position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static int findEndOfCentralDirectory(final ByteBuffer buffer) {
+        final int minPosition = Math.max(0, buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE - 0xFFFF);
+        for (int position = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; position >= minPosition; position--) {
+            if (buffer.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    public static class Entry {
+
+        private final ByteBuffer archive;
+        private final String name;
+        private final int method;
+        private final int crc;
+        private final int compressedSize;
+        private final int size;
+        private final int localHeaderOffset;
+
+        private SoftReference<byte[]> data;
+
+        /**
+         * Creates an entry from previously read central directory data.
+         *
+         * @param archive           The zip archive
+         * @param name              The name of the entry
+         * @param method            The compression method
+         * @param crc               The CRC32 of the uncompressed data
+         * @param compressedSize    The compressed size
+         * @param size              The uncompressed size
+         * @param localHeaderOffset The offset of the local file header in the archive
+         */
+        public Entry(final ByteBuffer archive, final String name, final int method, final int crc, final int compressedSize, final int size, final int localHeaderOffset) {
+            if (method != STORED && method != DEFLATED) {
+                throw new IllegalArgumentException("Unsupported compression method: " + method);
+            }
+            this.archive = archive;
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        /**
+         * Decompresses the entry. The result is softly cached, so it can be reclaimed by the garbage collector once it is no longer used.
+         *
+         * @return The decompressed data
+         * @throws IOException If the entry is malformed
+         */
+        public synchronized byte[] getData() throws IOException {
+            byte[] data = this.data != null ? this.data.get() : null;
+            if (data == null) {
+                data = this.decompress();
+                this.data = new SoftReference<>(data);
+            }
+            return data;
+        }
+
+        public String name() {
+            return this.name;
+        }
+
+        public int method() {
+            return this.method;
+        }
+
+        public int crc() {
+            return this.crc;
+        }
+
+        public int compressedSize() {
+            return this.compressedSize;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public int localHeaderOffset() {
+            return this.localHeaderOffset;
+        }
+
+        private byte[] decompress() throws IOException {
+            final ByteBuffer buffer = this.archive.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            if (this.localHeaderOffset + LOCAL_FILE_HEADER_SIZE > buffer.limit() || buffer.getInt(this.localHeaderOffset) != LOCAL_FILE_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local file header: " + this.name);
+            }
+            final int dataOffset = this.localHeaderOffset + LOCAL_FILE_HEADER_SIZE + (buffer.getShort(this.localHeaderOffset + 26) & 0xFFFF) + (buffer.getShort(this.localHeaderOffset + 28) & 0xFFFF);
+            if (dataOffset + this.compressedSize > buffer.limit()) {
+                throw new ZipException("Truncated entry: " + this.name);
+            }
+            // The uncompressed size is read from the archive, so it has to be checked before it is allocated
+            if (this.size < 0 || this.size > MAX_ENTRY_SIZE) {
+                throw new ZipException("Entry is too large: " + this.name + " (" + this.size + " bytes)");
+            } else if (this.method == STORED ? this.size != this.compressedSize : this.size > (long) this.compressedSize * MAX_DEFLATE_RATIO) {
+                throw new ZipException("Invalid entry size: " + this.name + " (" + this.compressedSize + " compressed, " + this.size + " uncompressed)");
+            }
+
+            final byte[] input;
+            final int inputOffset;
+            if (buffer.hasArray()) {
+                input = buffer.array();
+                inputOffset = buffer.arrayOffset() + dataOffset;
+            } else {
+                input = new byte[this.compressedSize];
+                inputOffset = 0;
+                buffer.position(dataOffset);
+                buffer.get(input);
+            }
+
+            final byte[] data;
+            if (this.method == STORED) {
+                data = Arrays.copyOfRange(input, inputOffset, inputOffset + this.size);
+            } else {
+                data = new byte[this.size];
+                final Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(input, inputOffset, this.compressedSize);
+                    int length = 0;
+                    while (length < this.size) {
+                        final int read = inflater.inflate(data, length, this.size - length);
+                        if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new ZipException("Truncated entry: " + this.name);
+                        }
+                        length += read;
+                    }
+                } catch (DataFormatException e) {
+                    throw new ZipException("Invalid entry: " + this.name + " (" + e.getMessage() + ")");
+                } finally {
+                    inflater.end();
+                }
+            }
+
+            final CRC32 crc32 = new CRC32();
+            crc32.update(data);
+            if ((int) crc32.getValue() != this.crc) {
+                throw new ZipException("CRC mismatch: " + this.name);
+            }
+            return data;
+        }
+
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * This file is part of ViaBedrock - https://github.com/RaphiMC/ViaBedrock
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viabedrock.api.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes zip archives whose entries are compressed in parallel.<br>
+ * Files in already compressed formats and files which don't shrink when deflated are stored. Entries use a fixed timestamp, so the same files always result in the same archive.
+ */
+public class ZipWriter {
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList("png", "jpg", "jpeg", "ogg", "fsb", "zip", "mcpack", "gz"));
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final int BATCH_SIZE = 256;
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034B50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014B50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054B50;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final int DOS_DATE = (1 << 5) | 1; // 1980-01-01 00:00:00
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+    /**
+     * Writes a zip archive to a stream. The entries are compressed in batches, so only a part of the archive is held in memory.
+     *
+     * @param outputStream     The output
+     * @param names            The names of the entries in archive order
+     * @param dataFunction     The function which returns the data of an entry. It is called concurrently.
+     * @param compressionLevel The deflate compression level
+     * @throws IOException If an I/O error occurs or the archive would require Zip64
+     */
+    public static void write(final OutputStream outputStream, final List<String> names, final Function<String, byte[]> dataFunction, final int compressionLevel) throws IOException {
+        if (names.size() > MAX_ENTRIES) {
+            throw new ZipException("Too many entries: " + names.size());
+        }
+
+        final List<CompressedEntry> entries = new ArrayList<>(names.size());
+        long offset = 0;
+        for (int i = 0; i < names.size(); i += BATCH_SIZE) {
+            final List<String> batch = names.subList(i, Math.min(i + BATCH_SIZE, names.size()));
+            final CompressedEntry[] compressedEntries = batch.parallelStream().map(name -> compress(name, dataFunction.apply(name), compressionLevel)).toArray(CompressedEntry[]::new);
+            for (CompressedEntry entry : compressedEntries) {
+                entry.offset = offset;
+                final ByteBuffer header = ByteBuffer.allocate(LOCAL_FILE_HEADER_SIZE + entry.name.length).order(ByteOrder.LITTLE_ENDIAN);
+                writeLocalFileHeader(header, entry);
+                outputStream.write(header.array());
+                outputStream.write(entry.data, 0, entry.compressedSize);
+                offset += header.capacity() + entry.compressedSize;
+                entry.data = null; // Only the central directory information is kept
+                entries.add(entry);
+            }
+        }
+
+        final ByteBuffer centralDirectory = ByteBuffer.allocate(getCentralDirectorySize(entries)).order(ByteOrder.LITTLE_ENDIAN);
+        writeCentralDirectory(centralDirectory, entries, offset);
+        outputStream.write(centralDirectory.array());
+    }
+
+    /**
+     * Writes a zip archive into a byte array. All entries are compressed first, so the array is allocated only once with its exact size.
+     *
+     * @param names            The names of the entries in archive order
+     * @param dataFunction     The function which returns the data of an entry. It is called concurrently.
+     * @param compressionLevel The deflate compression level
+     * @return The zip archive
+     * @throws IOException If the archive would require Zip64
+     */
+    public static byte[] toByteArray(final List<String> names, final Function<String, byte[]> dataFunction, final int compressionLevel) throws IOException {
+        if (names.size() > MAX_ENTRIES) {
+            throw new ZipException("Too many entries: " + names.size());
+        }
+
+        final List<CompressedEntry> entries = Arrays.asList(names.parallelStream().map(name -> compress(name, dataFunction.apply(name), compressionLevel)).toArray(CompressedEntry[]::new));
+        long offset = 0;
+        for (CompressedEntry entry : entries) {
+            entry.offset = offset;
+            offset += LOCAL_FILE_HEADER_SIZE + entry.name.length + entry.compressedSize;
+        }
+        final long size = offset + getCentralDirectorySize(entries);
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Archive too large: " + size);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        for (CompressedEntry entry : entries) {
+            writeLocalFileHeader(buffer, entry);
+            buffer.put(entry.data, 0, entry.compressedSize);
+        }
+        writeCentralDirectory(buffer, entries, offset);
+        return buffer.array();
+    }
+
+    private static CompressedEntry compress(final String name, final byte[] data, final int compressionLevel) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        final CompressedEntry entry = new CompressedEntry(name.getBytes(StandardCharsets.UTF_8), (int) crc32.getValue(), data.length);
+
+        final int extensionIndex = name.lastIndexOf('.');
+        final String extension = extensionIndex != -1 ? name.substring(extensionIndex + 1).toLowerCase(Locale.ROOT) : "";
+        if (compressionLevel != Deflater.NO_COMPRESSION && data.length != 0 && !COMPRESSED_EXTENSIONS.contains(extension)) {
+            final Deflater deflater = DEFLATER.get();
+            deflater.reset();
+            deflater.setLevel(compressionLevel);
+            deflater.setInput(data);
+            deflater.finish();
+            // Output which doesn't fit into the size of the input isn't worth keeping
+            final byte[] compressedData = new byte[data.length];
+            int length = 0;
+            while (!deflater.finished() && length < compressedData.length) {
+                length += deflater.deflate(compressedData, length, compressedData.length - length);
+            }
+            if (deflater.finished() && length < data.length) {
+                entry.method = ZipIndex.DEFLATED;
+                entry.data = compressedData;
+                entry.compressedSize = length;
+                return entry;
+            }
+        }
+
+        entry.method = ZipIndex.STORED;
+        entry.data = data;
+        entry.compressedSize = data.length;
+        return entry;
+    }
+
+    private static void writeLocalFileHeader(final ByteBuffer buffer, final CompressedEntry entry) {
+        buffer.putInt(LOCAL_FILE_HEADER_SIGNATURE);
+        buffer.putShort((short) (entry.method == ZipIndex.DEFLATED ? 20 : 10)); // version needed to extract
+        buffer.putShort((short) UTF8_FLAG);
+        buffer.putShort((short) entry.method);
+        buffer.putShort((short) 0); // time
+        buffer.putShort((short) DOS_DATE);
+        buffer.putInt(entry.crc);
+        buffer.putInt(entry.compressedSize);
+        buffer.putInt(entry.size);
+        buffer.putShort((short) entry.name.length);
+        buffer.putShort((short) 0); // extra field length
+        buffer.put(entry.name);
+    }
+
+    private static int getCentralDirectorySize(final List<CompressedEntry> entries) {
+        int size = END_OF_CENTRAL_DIRECTORY_SIZE;
+        for (CompressedEntry entry : entries) {
+            size += CENTRAL_DIRECTORY_HEADER_SIZE + entry.name.length;
+        }
+        return size;
+    }
+
+    private static void writeCentralDirectory(final ByteBuffer buffer, final List<CompressedEntry> entries, final long offset) throws ZipException {
+        if (offset > MAX_SIZE) {
+            throw new ZipException("Archive too large: " + offset);
+        }
+
+        final int start = buffer.position();
+        for (CompressedEntry entry : entries) {
+            buffer.putInt(CENTRAL_DIRECTORY_SIGNATURE);
+            buffer.putShort((short) 20); // version made by
+            buffer.putShort((short) (entry.method == ZipIndex.DEFLATED ? 20 : 10)); // version needed to extract
+            buffer.putShort((short) UTF8_FLAG);
+            buffer.putShort((short) entry.method);
+            buffer.putShort((short) 0); // time
+            buffer.putShort((short) DOS_DATE);
+            buffer.putInt(entry.crc);
+            buffer.putInt(entry.compressedSize);
+            buffer.putInt(entry.size);
+            buffer.putShort((short) entry.name.length);
+            buffer.putShort((short) 0); // extra field length
+            buffer.putShort((short) 0); // comment length
+            buffer.putShort((short) 0); // disk number
+            buffer.putShort((short) 0); // internal attributes
+            buffer.putInt(0); // external attributes
+            buffer.putInt((int) entry.offset);
+            buffer.put(entry.name);
+        }
+        final int centralDirectorySize = buffer.position() - start;
+
+        buffer.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        buffer.putShort((short) 0); // disk number
+        buffer.putShort((short) 0); // central directory disk number
+        buffer.putShort((short) entries.size());
+        buffer.putShort((short) entries.size());
+        buffer.putInt(centralDirectorySize);
+        buffer.putInt((int) offset);
+        buffer.putShort((short) 0); // comment length
+    }
+
+    private static class CompressedEntry {
+
+        private final byte[] name;
+        private final int crc;
+        private final int size;
+        private int method;
+        private byte[] data;
+        private int compressedSize;
+        private long offset;
+
+        private CompressedEntry(final byte[] name, final int crc, final int size) {
+            this.name = name;
+            this.crc = crc;
+            this.size = size;
+        }
+
+    }
+
+}
@@ -51,11 +51,31 @@ public interface ViaBedrockConfig extends Config {
      */
     String getResourcePackUrl();
 
+    /**
+     * @return The maximum size in bytes of the converted resource pack cache.
+     */
+    long getConvertedPackCacheSize();
+
+    /**
+     * @return The deflate compression level used for converted resource packs.
+     */
+    int getConvertedPackCompressionLevel();
+
+    /**
+     * @return The maximum number of outstanding resource pack chunk requests per pack.
+     */
+    int getResourcePackDownloadWindow();
+
     /**
      * @return The pack cache mode to use.
      */
     PackCacheMode getPackCacheMode();
 
+    /**
+     * @return The lighting mode to use.
+     */
+    LightingMode getLightingMode();
+
     enum BlobCacheMode {
 
         /**
@@ -130,4 +150,31 @@ public interface ViaBedrockConfig extends Config {
 
     }
 
+    enum LightingMode {
+
+        /**
+         * Every chunk will be sent fully lit.
+         */
+        FULL_BRIGHT,
+        /**
+         * Sky light will be calculated and block light will be left dark.
+         */
+        SKY_ONLY,
+        /**
+         * Sky light and block light will be calculated.
+         */
+        FULL;
+
+        public static LightingMode byName(String name) {
+            for (LightingMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name.replace('-', '_'))) {
+                    return mode;
+                }
+            }
+
+            return FULL_BRIGHT;
+        }
+
+    }
+
 }
@@ -46,6 +46,7 @@ public interface ViaBedrockPlatform {
 
         this.getServerPacksFolder().mkdirs();
         this.getBlobCacheFolder().mkdirs();
+        this.getConvertedPacksFolder().mkdirs();
     }
 
     Logger getLogger();
@@ -64,4 +65,8 @@ public interface ViaBedrockPlatform {
         return new File(this.getDataCacheFolder(), "blob_cache");
     }
 
+    default File getConvertedPacksFolder() {
+        return new File(this.getDataCacheFolder(), "converted_packs");
+    }
+
 }
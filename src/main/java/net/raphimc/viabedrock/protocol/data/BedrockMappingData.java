@@ -17,6 +17,8 @@
  */
 package net.raphimc.viabedrock.protocol.data;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import com.google.common.io.ByteStreams;
@@ -53,6 +55,8 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -60,10 +64,12 @@ import java.util.zip.GZIPInputStream;
 
 public class BedrockMappingData extends MappingDataBase {
 
+    private final Map<String, byte[]> resourceDigests = new HashMap<>();
+
     // Bedrock misc
-    private ResourcePack bedrockVanillaResourcePack;
-    private BufferedImage bedrockSteveSkin;
-    private JsonObject bedrockSkinGeometry;
+    private Supplier<ResourcePack> bedrockVanillaResourcePack;
+    private Supplier<BufferedImage> bedrockSteveSkin;
+    private Supplier<JsonObject> bedrockSkinGeometry;
 
     // Java misc
     private CompoundTag javaRegistries;
@@ -80,8 +86,11 @@ public class BedrockMappingData extends MappingDataBase {
     private BiMap<String, Integer> bedrockLegacyBlocks;
     private Int2ObjectMap<BedrockBlockState> bedrockLegacyBlockStates;
     private IntSet javaPreWaterloggedBlockStates;
+    private int[] javaWaterloggedBlockStates;
     private Int2IntMap javaPottedBlockStates;
     private Map<String, IntSet> javaHeightMapBlockStates;
+    private byte[] javaBlockStateLightOpacities;
+    private byte[] javaBlockStateLightEmissions;
 
     // Biomes
     private CompoundTag bedrockBiomeDefinitions;
@@ -120,56 +129,55 @@ public class BedrockMappingData extends MappingDataBase {
             this.getLogger().info("Loading " + this.unmappedVersion + " -> " + this.mappedVersion + " mappings...");
         }
 
-        final JsonObject javaViaMappingJson = this.readJson("java/via_mappings.json");
+        final Supplier<JsonObject> javaViaMappingJson = Suppliers.memoize(() -> this.readJson("java/via_mappings.json")); // Only needed if the compiled mappings are missing
+        Map<String, List<String>> compiledJavaViaMappings = this.readCompiled(CompiledMappingData.Table.VIA_MAPPINGS, CompiledMappingData::readViaMappings);
+        if (compiledJavaViaMappings == null) {
+            compiledJavaViaMappings = CompiledMappingData.parseViaMappings(javaViaMappingJson.get());
+        }
+        final Map<String, List<String>> javaViaMappings = compiledJavaViaMappings;
 
-        { // Bedrock misc
-            this.bedrockVanillaResourcePack = this.readResourcePack("bedrock/vanilla.mcpack", UUID.fromString("0575c61f-a5da-4b7f-9961-ffda2908861e"), "0.0.1");
-            this.bedrockSteveSkin = this.readImage("bedrock/skin/steve.png");
-            this.bedrockSkinGeometry = JsonUtil.sort(this.readJson("bedrock/skin/geometry.json"), Comparator.naturalOrder());
+        { // Bedrock misc (Not needed until a player joins)
+            this.bedrockVanillaResourcePack = Suppliers.memoize(() -> this.readResourcePack("bedrock/vanilla.mcpack", UUID.fromString("0575c61f-a5da-4b7f-9961-ffda2908861e"), "0.0.1"));
+            this.bedrockSteveSkin = Suppliers.memoize(() -> this.readImage("bedrock/skin/steve.png"));
+            this.bedrockSkinGeometry = Suppliers.memoize(() -> JsonUtil.sort(this.readJson("bedrock/skin/geometry.json"), Comparator.naturalOrder()));
         }
 
-        { // Java misc
+        final CompletableFuture<Void> javaMiscFuture = CompletableFuture.runAsync(() -> { // Java misc
             this.javaRegistries = this.readNBT("java/registries.nbt");
             this.javaTags = this.readNBT("java/tags.nbt");
 
-            final JsonArray javaCommandArgumentTypesJson = javaViaMappingJson.getAsJsonArray("argumenttypes");
-            this.javaCommandArgumentTypes = HashBiMap.create(javaCommandArgumentTypesJson.size());
-            for (int i = 0; i < javaCommandArgumentTypesJson.size(); i++) {
-                this.javaCommandArgumentTypes.put(Key.namespaced(javaCommandArgumentTypesJson.get(i).getAsString()), i);
+            final List<String> javaCommandArgumentTypesList = javaViaMappings.get("argumenttypes");
+            this.javaCommandArgumentTypes = HashBiMap.create(javaCommandArgumentTypesList.size());
+            for (int i = 0; i < javaCommandArgumentTypesList.size(); i++) {
+                this.javaCommandArgumentTypes.put(Key.namespaced(javaCommandArgumentTypesList.get(i)), i);
             }
             ArgumentTypeRegistry.init();
-        }
+        });
 
-        { // Block states
+        final CompletableFuture<Void> blockStatesFuture = CompletableFuture.runAsync(() -> { // Block states
             this.bedrockBlockStateUpgrader = new BlockStateUpgrader();
 
-            final JsonArray javaBlockStatesJson = javaViaMappingJson.getAsJsonArray("blockstates");
-            this.javaBlockStates = HashBiMap.create(javaBlockStatesJson.size());
-            for (int i = 0; i < javaBlockStatesJson.size(); i++) {
-                final BlockState blockState = BlockState.fromString(javaBlockStatesJson.get(i).getAsString());
-                this.javaBlockStates.put(blockState, i);
-            }
-
             final ListTag bedrockBlockStatesTag = this.readNBT("bedrock/block_palette.nbt").get("blocks");
             this.bedrockBlockStates = new ArrayList<>(bedrockBlockStatesTag.size());
             for (Tag tag : bedrockBlockStatesTag.getValue()) {
                 this.bedrockBlockStates.add(BedrockBlockState.fromNbt((CompoundTag) tag));
             }
+            final Set<BlockState> bedrockBlockStateSet = new HashSet<>(this.bedrockBlockStates);
 
-            final JsonObject bedrockToJavaBlockStateMappingsJson = this.readJson("custom/blockstate_mappings.json");
-            this.bedrockToJavaBlockStates = new HashMap<>(bedrockToJavaBlockStateMappingsJson.size());
-            for (Map.Entry<String, JsonElement> entry : bedrockToJavaBlockStateMappingsJson.entrySet()) {
-                final BlockState bedrockBlockState = BlockState.fromString(entry.getKey());
-                if (!this.bedrockBlockStates.contains(bedrockBlockState)) {
-                    throw new RuntimeException("Unknown bedrock block state: " + bedrockBlockState.toBlockStateString());
-                }
-                final BlockState javaBlockState = BlockState.fromString(entry.getValue().getAsString());
-                if (!this.javaBlockStates.containsKey(javaBlockState)) {
-                    throw new RuntimeException("Unknown java block state: " + javaBlockState.toBlockStateString());
-                }
-                if (this.bedrockToJavaBlockStates.put(bedrockBlockState, javaBlockState) != null) {
-                    throw new RuntimeException("Duplicate bedrock -> java block state mapping for " + bedrockBlockState.toBlockStateString());
+            CompiledMappingData.BlockStateMappings blockStateMappings = this.readCompiled(CompiledMappingData.Table.BLOCK_STATES, CompiledMappingData::readBlockStateMappings);
+            if (blockStateMappings == null) {
+                blockStateMappings = CompiledMappingData.parseBlockStateMappings(javaViaMappingJson.get().getAsJsonArray("blockstates"), this.readJson("custom/blockstate_mappings.json"));
+            }
+            this.javaBlockStates = HashBiMap.create(blockStateMappings.javaBlockStates().size());
+            for (int i = 0; i < blockStateMappings.javaBlockStates().size(); i++) {
+                this.javaBlockStates.put(blockStateMappings.javaBlockStates().get(i), i);
+            }
+            this.bedrockToJavaBlockStates = new HashMap<>(blockStateMappings.bedrockToJavaBlockStates().size());
+            for (Map.Entry<BlockState, BlockState> entry : blockStateMappings.bedrockToJavaBlockStates().entrySet()) {
+                if (!bedrockBlockStateSet.contains(entry.getKey())) {
+                    throw new RuntimeException("Unknown bedrock block state: " + entry.getKey().toBlockStateString());
                 }
+                this.bedrockToJavaBlockStates.put(entry.getKey(), entry.getValue());
             }
 
             final JsonObject bedrockBlockTagsJson = this.readJson("custom/block_tags.json");
@@ -234,6 +242,18 @@ public class BedrockMappingData extends MappingDataBase {
                 this.javaPreWaterloggedBlockStates.add(this.javaBlockStates.get(javaBlockState).intValue());
             }
 
+            this.javaWaterloggedBlockStates = new int[this.javaBlockStates.size()];
+            for (Map.Entry<BlockState, Integer> entry : this.javaBlockStates.entrySet()) {
+                final int javaBlockStateId = entry.getValue();
+                if (this.javaPreWaterloggedBlockStates.contains(javaBlockStateId)) {
+                    this.javaWaterloggedBlockStates[javaBlockStateId] = javaBlockStateId;
+                } else if (entry.getKey().properties().containsKey("waterlogged")) {
+                    this.javaWaterloggedBlockStates[javaBlockStateId] = this.javaBlockStates.getOrDefault(entry.getKey().withProperty("waterlogged", "true"), -1);
+                } else {
+                    this.javaWaterloggedBlockStates[javaBlockStateId] = -1;
+                }
+            }
+
             final JsonObject javaPottedBlockStatesJson = this.readJson("custom/potted_blockstates.json");
             this.javaPottedBlockStates = new Int2IntOpenHashMap(javaPottedBlockStatesJson.size());
             for (Map.Entry<String, JsonElement> entry : javaPottedBlockStatesJson.entrySet()) {
@@ -259,9 +279,19 @@ public class BedrockMappingData extends MappingDataBase {
                 }
                 this.javaHeightMapBlockStates.put(entry.getKey(), blockStates);
             }
-        }
 
-        { // Biomes
+            final JsonObject javaLightBlockStatesJson = this.readJson("custom/light_blockstates.json");
+            this.javaBlockStateLightOpacities = this.readLightValues(javaLightBlockStatesJson.getAsJsonObject("opacity"), (byte) 15);
+            this.javaBlockStateLightEmissions = this.readLightValues(javaLightBlockStatesJson.getAsJsonObject("emission"), (byte) 0);
+            for (Map.Entry<BlockState, Integer> entry : this.javaBlockStates.entrySet()) {
+                final int javaBlockStateId = entry.getValue();
+                if ("true".equals(entry.getKey().properties().get("waterlogged")) || this.javaPreWaterloggedBlockStates.contains(javaBlockStateId)) {
+                    this.javaBlockStateLightOpacities[javaBlockStateId] = (byte) Math.max(1, this.javaBlockStateLightOpacities[javaBlockStateId]);
+                }
+            }
+        });
+
+        final CompletableFuture<Void> biomesFuture = CompletableFuture.runAsync(() -> { // Biomes
             this.bedrockBiomeDefinitions = this.readNBT("bedrock/biome_definitions.nbt");
 
             final JsonObject bedrockBiomesJson = this.readJson("bedrock/biomes.json", JsonObject.class);
@@ -301,15 +331,15 @@ public class BedrockMappingData extends MappingDataBase {
                 }
                 this.bedrockToJavaBiomeExtraData.put(dataName, extraData);
             }
-        }
+        });
 
-        { // Items
+        final CompletableFuture<Void> itemsFuture = blockStatesFuture.thenRunAsync(() -> { // Items (Needs the bedrock block states)
             this.bedrockItemUpgrader = new ItemUpgrader();
 
-            final JsonArray javaItemsJson = javaViaMappingJson.get("items").getAsJsonArray();
-            this.javaItems = HashBiMap.create(javaItemsJson.size());
-            for (int i = 0; i < javaItemsJson.size(); i++) {
-                this.javaItems.put(Key.namespaced(javaItemsJson.get(i).getAsString()), i);
+            final List<String> javaItemsList = javaViaMappings.get("items");
+            this.javaItems = HashBiMap.create(javaItemsList.size());
+            for (int i = 0; i < javaItemsList.size(); i++) {
+                this.javaItems.put(Key.namespaced(javaItemsList.get(i)), i);
             }
 
             final JsonArray bedrockItemsJson = this.readJson("bedrock/runtime_item_states.json", JsonArray.class);
@@ -336,73 +366,61 @@ public class BedrockMappingData extends MappingDataBase {
                 }
             }
 
-            final JsonObject bedrockItemMappingsJson = this.readJson("custom/item_mappings.json");
-            this.bedrockToJavaBlockItems = new HashMap<>(bedrockItemMappingsJson.size());
-            this.bedrockToJavaMetaItems = new HashMap<>(bedrockItemMappingsJson.size());
-            for (Map.Entry<String, JsonElement> entry : bedrockItemMappingsJson.entrySet()) {
-                final String bedrockIdentifier = entry.getKey();
+            final Map<String, List<BedrockBlockState>> bedrockBlockStatesByIdentifier = new HashMap<>();
+            for (BedrockBlockState bedrockBlockState : this.bedrockBlockStates) {
+                bedrockBlockStatesByIdentifier.computeIfAbsent(bedrockBlockState.namespacedIdentifier(), k -> new ArrayList<>()).add(bedrockBlockState);
+            }
+            List<CompiledMappingData.ItemMapping> itemMappings = this.readCompiled(CompiledMappingData.Table.ITEM_MAPPINGS, CompiledMappingData::readItemMappings);
+            if (itemMappings == null) {
+                itemMappings = CompiledMappingData.parseItemMappings(this.readJson("custom/item_mappings.json"));
+            }
+            this.bedrockToJavaBlockItems = new HashMap<>(itemMappings.size());
+            this.bedrockToJavaMetaItems = new HashMap<>(itemMappings.size());
+            for (CompiledMappingData.ItemMapping itemMapping : itemMappings) {
+                final String bedrockIdentifier = itemMapping.bedrockIdentifier();
                 if (!this.bedrockItems.containsKey(bedrockIdentifier)) {
                     throw new RuntimeException("Unknown bedrock item: " + bedrockIdentifier);
                 }
-                final JsonObject definition = entry.getValue().getAsJsonObject();
-                if (definition.has("block")) {
+                if (itemMapping.blockItem()) {
                     if (this.bedrockItems.get(bedrockIdentifier) > 255) {
                         throw new RuntimeException("Tried to register meta item as block item: " + bedrockIdentifier);
                     }
 
-                    final JsonObject blockDefinition = definition.get("block").getAsJsonObject();
-                    final Map<BlockState, ItemRewriter.Rewriter> blockItems = new LinkedHashMap<>(blockDefinition.size());
+                    final Map<BlockState, ItemRewriter.Rewriter> blockItems = new LinkedHashMap<>(itemMapping.mappings().size());
                     this.bedrockToJavaBlockItems.put(bedrockIdentifier, blockItems);
-                    final List<BlockState> allPossibleStates = new ArrayList<>();
-                    for (Map.Entry<String, JsonElement> blockMapping : blockDefinition.entrySet()) {
-                        final BlockState blockState = BlockState.fromString(blockMapping.getKey());
+                    for (CompiledMappingData.JavaItemMapping mapping : itemMapping.mappings()) {
+                        final BlockState blockState = BlockState.fromString(mapping.blockState());
                         final String blockStateIdentifier = blockState.namespacedIdentifier();
                         final List<BlockState> blockStates = new ArrayList<>();
-                        for (BedrockBlockState bedrockBlockState : this.bedrockBlockStates) {
-                            if (bedrockBlockState.namespacedIdentifier().equals(blockStateIdentifier)) {
-                                if (!bedrockBlockState.properties().keySet().containsAll(blockState.properties().keySet())) {
-                                    throw new RuntimeException("Unknown bedrock block state property: " + blockState.properties().keySet() + " for " + blockStateIdentifier);
-                                }
-                                if (bedrockBlockState.properties().entrySet().containsAll(blockState.properties().entrySet())) {
-                                    blockStates.add(bedrockBlockState);
-                                }
-                                allPossibleStates.add(bedrockBlockState);
+                        for (BedrockBlockState bedrockBlockState : bedrockBlockStatesByIdentifier.getOrDefault(blockStateIdentifier, Collections.emptyList())) {
+                            if (!bedrockBlockState.properties().keySet().containsAll(blockState.properties().keySet())) {
+                                throw new RuntimeException("Unknown bedrock block state property: " + blockState.properties().keySet() + " for " + blockStateIdentifier);
+                            }
+                            if (bedrockBlockState.properties().entrySet().containsAll(blockState.properties().entrySet())) {
+                                blockStates.add(bedrockBlockState);
                             }
                         }
                         if (blockStates.isEmpty()) {
                             throw new RuntimeException("Unknown bedrock block state: " + blockState.toBlockStateString());
                         }
 
+                        final ItemRewriter.Rewriter rewriter = ItemRewriter.Rewriter.fromMapping(bedrockIdentifier, mapping.javaIdentifier(), mapping.javaDisplayName(), mapping.javaTag());
                         for (BlockState state : blockStates) {
-                            if (blockItems.put(state, ItemRewriter.Rewriter.fromJson(bedrockIdentifier, blockMapping.getValue().getAsJsonObject())) != null) {
+                            if (blockItems.put(state, rewriter) != null) {
                                 throw new RuntimeException("Duplicate bedrock -> java item mapping for " + bedrockIdentifier);
                             }
                         }
                     }
-
-                    /*for (BlockState state : allPossibleStates) {
-                        if (!blockItems.containsKey(state)) {
-                            throw new RuntimeException("Missing bedrock -> java item mapping for " + state.toBlockStateString());
-                        }
-                    }*/
-                } else if (definition.has("meta")) {
+                } else {
                     if (this.bedrockItems.get(bedrockIdentifier) < 256) {
                         throw new RuntimeException("Tried to register block item as meta item: " + bedrockIdentifier);
                     }
 
-                    final JsonObject metaDefinition = definition.get("meta").getAsJsonObject();
-                    final Map<Integer, ItemRewriter.Rewriter> metaItems = new HashMap<>(metaDefinition.size());
+                    final Map<Integer, ItemRewriter.Rewriter> metaItems = new HashMap<>(itemMapping.mappings().size());
                     this.bedrockToJavaMetaItems.put(bedrockIdentifier, metaItems);
-                    for (Map.Entry<String, JsonElement> metaMapping : metaDefinition.entrySet()) {
-                        Integer meta;
-                        try {
-                            meta = Integer.parseInt(metaMapping.getKey());
-                        } catch (NumberFormatException e) {
-                            meta = null;
-                        }
-
-                        if (metaItems.put(meta, ItemRewriter.Rewriter.fromJson(bedrockIdentifier, metaMapping.getValue().getAsJsonObject())) != null) {
-                            throw new RuntimeException("Duplicate bedrock -> java item mapping for " + bedrockIdentifier + ":" + meta);
+                    for (CompiledMappingData.JavaItemMapping mapping : itemMapping.mappings()) {
+                        if (metaItems.put(mapping.meta(), ItemRewriter.Rewriter.fromMapping(bedrockIdentifier, mapping.javaIdentifier(), mapping.javaDisplayName(), mapping.javaTag())) != null) {
+                            throw new RuntimeException("Duplicate bedrock -> java item mapping for " + bedrockIdentifier + ":" + mapping.meta());
                         }
                     }
 
@@ -412,8 +430,6 @@ public class BedrockMappingData extends MappingDataBase {
                     if (metaItems.size() > 1 && !metaItems.containsKey(0)) {
                         throw new RuntimeException("Missing bedrock -> java item mapping for " + bedrockIdentifier + ":0");
                     }
-                } else {
-                    throw new RuntimeException("Unknown item mapping definition: " + definition);
                 }
             }
 
@@ -440,14 +456,14 @@ public class BedrockMappingData extends MappingDataBase {
                 }
             }
 
-            final JsonArray javaMenusJson = javaViaMappingJson.get("menus").getAsJsonArray();
-            this.javaMenus = HashBiMap.create(javaMenusJson.size());
-            for (int i = 0; i < javaMenusJson.size(); i++) {
-                this.javaMenus.put(Key.namespaced(javaMenusJson.get(i).getAsString()), i);
+            final List<String> javaMenusList = javaViaMappings.get("menus");
+            this.javaMenus = HashBiMap.create(javaMenusList.size());
+            for (int i = 0; i < javaMenusList.size(); i++) {
+                this.javaMenus.put(Key.namespaced(javaMenusList.get(i)), i);
             }
             // noinspection ResultOfMethodCallIgnored
             MenuType.values(); // Initialize the enum
-        }
+        });
 
         { // Entities
             final CompoundTag entityIdentifiersTag = this.readNBT("bedrock/entity_identifiers.nbt");
@@ -494,14 +510,14 @@ public class BedrockMappingData extends MappingDataBase {
                 }
             });
 
-            final JsonArray javaBlockEntitiesJson = javaViaMappingJson.get("blockentities").getAsJsonArray();
-            this.javaBlockEntities = HashBiMap.create(javaBlockEntitiesJson.size());
-            for (int i = 0; i < javaBlockEntitiesJson.size(); i++) {
-                this.javaBlockEntities.put(javaBlockEntitiesJson.get(i).getAsString(), i);
+            final List<String> javaBlockEntitiesList = javaViaMappings.get("blockentities");
+            this.javaBlockEntities = HashBiMap.create(javaBlockEntitiesList.size());
+            for (int i = 0; i < javaBlockEntitiesList.size(); i++) {
+                this.javaBlockEntities.put(javaBlockEntitiesList.get(i), i);
             }
         }
 
-        { // Effects
+        final CompletableFuture<Void> effectsFuture = CompletableFuture.runAsync(() -> { // Effects
             final JsonArray javaEffectsJson = this.readJson("java/effects.json", JsonArray.class);
             this.javaEffects = HashBiMap.create(javaEffectsJson.size());
             for (int i = 0; i < javaEffectsJson.size(); i++) {
@@ -535,27 +551,36 @@ public class BedrockMappingData extends MappingDataBase {
                     throw new IllegalStateException("Missing java effect mapping for: " + javaIdentifier);
                 }
             }
-        }
+        });
 
-        { // Other stuff
+        final CompletableFuture<Void> otherFuture = CompletableFuture.runAsync(() -> { // Other stuff
             final JsonObject bedrockToJavaExperimentalFeatureMappingsJson = this.readJson("custom/experimental_feature_mappings.json");
             this.bedrockToJavaExperimentalFeatures = HashBiMap.create(bedrockToJavaExperimentalFeatureMappingsJson.size());
             for (Map.Entry<String, JsonElement> entry : bedrockToJavaExperimentalFeatureMappingsJson.entrySet()) {
                 this.bedrockToJavaExperimentalFeatures.put(entry.getKey(), entry.getValue().getAsString());
             }
+        });
+
+        try {
+            CompletableFuture.allOf(javaMiscFuture, blockStatesFuture, biomesFuture, itemsFuture, effectsFuture, otherFuture).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
         }
     }
 
     public ResourcePack getBedrockVanillaResourcePack() {
-        return this.bedrockVanillaResourcePack;
+        return this.bedrockVanillaResourcePack.get();
     }
 
     public BufferedImage getSteveSkin() {
-        return this.bedrockSteveSkin;
+        return this.bedrockSteveSkin.get();
     }
 
     public JsonObject getBedrockSkinGeometry() {
-        return this.bedrockSkinGeometry;
+        return this.bedrockSkinGeometry.get();
     }
 
     public CompoundTag getJavaRegistries() {
@@ -606,6 +631,10 @@ public class BedrockMappingData extends MappingDataBase {
         return this.javaPreWaterloggedBlockStates;
     }
 
+    public int[] getJavaWaterloggedBlockStates() {
+        return this.javaWaterloggedBlockStates;
+    }
+
     public Int2IntMap getJavaPottedBlockStates() {
         return this.javaPottedBlockStates;
     }
@@ -614,6 +643,14 @@ public class BedrockMappingData extends MappingDataBase {
         return this.javaHeightMapBlockStates;
     }
 
+    public byte[] getJavaBlockStateLightOpacities() {
+        return this.javaBlockStateLightOpacities;
+    }
+
+    public byte[] getJavaBlockStateLightEmissions() {
+        return this.javaBlockStateLightEmissions;
+    }
+
     public CompoundTag getBedrockBiomeDefinitions() {
         return this.bedrockBiomeDefinitions;
     }
@@ -694,6 +731,7 @@ public class BedrockMappingData extends MappingDataBase {
             final ResourcePack resourcePack = new ResourcePack(uuid, version, "", "", "", false, false, 0, ResourcePack.TYPE_RESOURCE);
             resourcePack.setCompressedDataLength(bytes.length, bytes.length);
             resourcePack.processDataChunk(0, bytes);
+            resourcePack.content().freeze(); // Shared by all connections
             return resourcePack;
         } catch (Exception e) {
             this.getLogger().log(Level.SEVERE, "Could not read " + file, e);
@@ -751,6 +789,42 @@ public class BedrockMappingData extends MappingDataBase {
         }
     }
 
+    private <T> T readCompiled(final CompiledMappingData.Table table, final CompiledMappingData.TableReader<T> reader) {
+        final String file = "assets/viabedrock/data/" + table.file();
+        try (final InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream(file)) {
+            if (inputStream == null) {
+                return null;
+            }
+
+            // The whole table is read before anything is registered, so a table which fails to read doesn't leave partial data behind for the JSON fallback
+            final DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+            if (!CompiledMappingData.readHeader(dataInputStream, table, CompiledMappingData.digest(table, this::readResourceDigest))) {
+                this.getLogger().warning("Ignoring outdated " + file);
+                return null;
+            }
+            return reader.read(dataInputStream);
+        } catch (IOException e) {
+            this.getLogger().log(Level.SEVERE, "Could not read " + file, e);
+            return null;
+        }
+    }
+
+    private byte[] readResourceDigest(final String file) throws IOException {
+        synchronized (this.resourceDigests) { // The block state and via mappings tables share a source, which is only hashed once
+            byte[] digest = this.resourceDigests.get(file);
+            if (digest == null) {
+                try (final InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream("assets/viabedrock/data/" + file)) {
+                    if (inputStream == null) {
+                        throw new FileNotFoundException("assets/viabedrock/data/" + file);
+                    }
+                    digest = CompiledMappingData.digest(inputStream);
+                }
+                this.resourceDigests.put(file, digest);
+            }
+            return digest;
+        }
+    }
+
     private BufferedImage readImage(String file) {
         file = "assets/viabedrock/data/" + file;
         try (final InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream(file)) {
@@ -766,6 +840,45 @@ public class BedrockMappingData extends MappingDataBase {
         }
     }
 
+    private byte[] readLightValues(final JsonObject lightValuesJson, final byte defaultValue) {
+        final Map<String, List<Map.Entry<BlockState, Byte>>> lightValues = new HashMap<>();
+        for (Map.Entry<String, JsonElement> entry : lightValuesJson.entrySet()) {
+            final BlockState blockState = BlockState.fromString(entry.getKey());
+            final int value = entry.getValue().getAsInt();
+            if (value < 0 || value > 15) {
+                throw new RuntimeException("Invalid light value for " + blockState.toBlockStateString() + ": " + value);
+            }
+            lightValues.computeIfAbsent(blockState.namespacedIdentifier(), k -> new ArrayList<>()).add(new AbstractMap.SimpleImmutableEntry<>(blockState, (byte) value));
+        }
+        for (List<Map.Entry<BlockState, Byte>> values : lightValues.values()) { // Most specific partial block state wins
+            values.sort(Comparator.comparingInt(e -> e.getKey().properties().size()));
+        }
+
+        final byte[] lightValuesArray = new byte[this.javaBlockStates.size()];
+        Arrays.fill(lightValuesArray, defaultValue);
+        final Set<BlockState> usedBlockStates = new HashSet<>();
+        for (Map.Entry<BlockState, Integer> entry : this.javaBlockStates.entrySet()) {
+            final List<Map.Entry<BlockState, Byte>> values = lightValues.get(entry.getKey().namespacedIdentifier());
+            if (values == null) continue;
+
+            for (Map.Entry<BlockState, Byte> value : values) {
+                if (entry.getKey().properties().entrySet().containsAll(value.getKey().properties().entrySet())) {
+                    lightValuesArray[entry.getValue()] = value.getValue();
+                    usedBlockStates.add(value.getKey());
+                }
+            }
+        }
+        for (List<Map.Entry<BlockState, Byte>> values : lightValues.values()) {
+            for (Map.Entry<BlockState, Byte> value : values) {
+                if (!usedBlockStates.contains(value.getKey())) {
+                    throw new RuntimeException("Unknown java block state: " + value.getKey().toBlockStateString());
+                }
+            }
+        }
+
+        return lightValuesArray;
+    }
+
     private void buildLegacyBlockStateMappings() {
         try (final InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream("assets/viabedrock/data/bedrock/block_id_meta_to_1_12_0_nbt.bin")) {
             if (inputStream == null) {
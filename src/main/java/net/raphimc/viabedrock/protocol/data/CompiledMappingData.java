@@ -0,0 +1,508 @@
+/*
+ * This file is part of ViaBedrock - https://github.com/RaphiMC/ViaBedrock
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viabedrock.protocol.data;
+
+import com.viaversion.viaversion.libs.gson.JsonArray;
+import com.viaversion.viaversion.libs.gson.JsonElement;
+import com.viaversion.viaversion.libs.gson.JsonObject;
+import com.viaversion.viaversion.libs.gson.JsonParser;
+import net.raphimc.viabedrock.api.model.BlockState;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Binary tables of the mapping data which is the slowest to parse from JSON.<br>
+ * The tables are generated from the JSON files at build time by {@link #main(String[])}. The JSON fallback of {@link BedrockMappingData} uses the same parse methods, so both produce the same data.<br>
+ * Every table carries a digest of the JSON files it was generated from, so a stale table is ignored instead of shadowing edited JSON files.
+ */
+public class CompiledMappingData {
+
+    private static final int VERSION = 2;
+    private static final List<String> VIA_MAPPINGS_SECTIONS = Arrays.asList("argumenttypes", "items", "menus", "blockentities");
+
+    public enum Table {
+
+        BLOCK_STATES("compiled/blockstates.bin", 0x5642424D /* VBBM */, "java/via_mappings.json", "custom/blockstate_mappings.json"),
+        VIA_MAPPINGS("compiled/via_mappings.bin", 0x5642564D /* VBVM */, "java/via_mappings.json"),
+        ITEM_MAPPINGS("compiled/item_mappings.bin", 0x5642494D /* VBIM */, "custom/item_mappings.json");
+
+        private final String file;
+        private final int magic;
+        private final String[] sources;
+
+        Table(final String file, final int magic, final String... sources) {
+            this.file = file;
+            this.magic = magic;
+            this.sources = sources;
+        }
+
+        public String file() {
+            return this.file;
+        }
+
+    }
+
+    /**
+     * Generates all tables.
+     *
+     * @param args The mapping data directory and the output directory
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: <data directory> <output directory>");
+        }
+        final File dataDir = new File(args[0]);
+        final File outputDir = new File(args[1]);
+
+        final Map<String, byte[]> sourceDigests = new HashMap<>();
+        final SourceDigester sourceDigester = source -> {
+            byte[] digest = sourceDigests.get(source);
+            if (digest == null) {
+                try (final InputStream inputStream = new FileInputStream(new File(dataDir, source))) {
+                    digest = digest(inputStream);
+                }
+                sourceDigests.put(source, digest);
+            }
+            return digest;
+        };
+
+        final JsonObject javaViaMappingsJson = readJson(new File(dataDir, "java/via_mappings.json"));
+        writeTable(outputDir, Table.BLOCK_STATES, sourceDigester, out -> writeBlockStateMappings(out, parseBlockStateMappings(javaViaMappingsJson.getAsJsonArray("blockstates"), readJson(new File(dataDir, "custom/blockstate_mappings.json")))));
+        writeTable(outputDir, Table.VIA_MAPPINGS, sourceDigester, out -> writeViaMappings(out, parseViaMappings(javaViaMappingsJson)));
+        writeTable(outputDir, Table.ITEM_MAPPINGS, sourceDigester, out -> writeItemMappings(out, parseItemMappings(readJson(new File(dataDir, "custom/item_mappings.json")))));
+    }
+
+    /**
+     * Computes the digest of the JSON files a table is generated from.
+     *
+     * @param table          The table
+     * @param sourceDigester Provides the digest of a single JSON file
+     * @return The digest
+     */
+    public static byte[] digest(final Table table, final SourceDigester sourceDigester) throws IOException {
+        final MessageDigest sha1 = sha1();
+        for (String source : table.sources) {
+            sha1.update(sourceDigester.digest(source));
+        }
+        return sha1.digest();
+    }
+
+    public static byte[] digest(final InputStream inputStream) throws IOException {
+        final MessageDigest sha1 = sha1();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            sha1.update(buffer, 0, read);
+        }
+        return sha1.digest();
+    }
+
+    /**
+     * Reads the header of a table.
+     *
+     * @param in     The input stream
+     * @param table  The table
+     * @param digest The digest of the JSON files the table has to be generated from
+     * @return true if the table is up to date and its data can be read
+     */
+    public static boolean readHeader(final DataInputStream in, final Table table, final byte[] digest) throws IOException {
+        if (in.readInt() != table.magic || in.readInt() != VERSION) {
+            return false;
+        }
+        final byte[] tableDigest = new byte[digest.length];
+        in.readFully(tableDigest);
+        return Arrays.equals(tableDigest, digest);
+    }
+
+    public static BlockStateMappings parseBlockStateMappings(final JsonArray javaBlockStatesJson, final JsonObject bedrockToJavaBlockStatesJson) {
+        final List<BlockState> javaBlockStates = new ArrayList<>(javaBlockStatesJson.size());
+        final Set<BlockState> javaBlockStateSet = new HashSet<>(javaBlockStatesJson.size());
+        for (JsonElement element : javaBlockStatesJson) {
+            final BlockState javaBlockState = BlockState.fromString(element.getAsString());
+            javaBlockStates.add(javaBlockState);
+            javaBlockStateSet.add(javaBlockState);
+        }
+
+        final Map<BlockState, BlockState> bedrockToJavaBlockStates = new LinkedHashMap<>(bedrockToJavaBlockStatesJson.size());
+        for (Map.Entry<String, JsonElement> entry : bedrockToJavaBlockStatesJson.entrySet()) {
+            final BlockState bedrockBlockState = BlockState.fromString(entry.getKey());
+            final BlockState javaBlockState = BlockState.fromString(entry.getValue().getAsString());
+            if (!javaBlockStateSet.contains(javaBlockState)) {
+                throw new RuntimeException("Unknown java block state: " + javaBlockState.toBlockStateString());
+            }
+            if (bedrockToJavaBlockStates.put(bedrockBlockState, javaBlockState) != null) {
+                throw new RuntimeException("Duplicate bedrock -> java block state mapping for " + bedrockBlockState.toBlockStateString());
+            }
+        }
+        return new BlockStateMappings(javaBlockStates, bedrockToJavaBlockStates);
+    }
+
+    public static Map<String, List<String>> parseViaMappings(final JsonObject javaViaMappingsJson) {
+        final Map<String, List<String>> sections = new HashMap<>(VIA_MAPPINGS_SECTIONS.size() * 2);
+        for (String section : VIA_MAPPINGS_SECTIONS) {
+            final JsonArray sectionJson = javaViaMappingsJson.getAsJsonArray(section);
+            if (sectionJson == null) {
+                throw new RuntimeException("Missing via mappings section: " + section);
+            }
+            final List<String> entries = new ArrayList<>(sectionJson.size());
+            for (JsonElement element : sectionJson) {
+                entries.add(element.getAsString());
+            }
+            sections.put(section, entries);
+        }
+        return sections;
+    }
+
+    public static List<ItemMapping> parseItemMappings(final JsonObject itemMappingsJson) {
+        final List<ItemMapping> itemMappings = new ArrayList<>(itemMappingsJson.size());
+        for (Map.Entry<String, JsonElement> entry : itemMappingsJson.entrySet()) {
+            final JsonObject definition = entry.getValue().getAsJsonObject();
+            final boolean blockItem = definition.has("block");
+            if (!blockItem && !definition.has("meta")) {
+                throw new RuntimeException("Unknown item mapping definition: " + definition);
+            }
+
+            final JsonObject mappingsJson = definition.get(blockItem ? "block" : "meta").getAsJsonObject();
+            final List<JavaItemMapping> mappings = new ArrayList<>(mappingsJson.size());
+            for (Map.Entry<String, JsonElement> mapping : mappingsJson.entrySet()) {
+                String blockState = null;
+                Integer meta = null;
+                if (blockItem) {
+                    blockState = mapping.getKey();
+                } else {
+                    try {
+                        meta = Integer.parseInt(mapping.getKey());
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+
+                final JsonObject javaMapping = mapping.getValue().getAsJsonObject();
+                final String javaIdentifier = javaMapping.get("java_id").getAsString();
+                final String javaDisplayName = javaMapping.has("java_display_name") ? javaMapping.get("java_display_name").getAsString() : null;
+                final String javaTag = javaMapping.has("java_tag") ? javaMapping.get("java_tag").getAsString() : null;
+                mappings.add(new JavaItemMapping(blockState, meta, javaIdentifier, javaDisplayName, javaTag));
+            }
+            itemMappings.add(new ItemMapping(entry.getKey(), blockItem, mappings));
+        }
+        return itemMappings;
+    }
+
+    public static BlockStateMappings readBlockStateMappings(final DataInputStream in) throws IOException {
+        final String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+
+        final BlockState[] javaBlockStates = new BlockState[in.readInt()];
+        for (int i = 0; i < javaBlockStates.length; i++) {
+            javaBlockStates[i] = readBlockState(in, strings);
+        }
+
+        final int mappingCount = in.readInt();
+        final Map<BlockState, BlockState> bedrockToJavaBlockStates = new LinkedHashMap<>(mappingCount);
+        for (int i = 0; i < mappingCount; i++) {
+            final BlockState bedrockBlockState = readBlockState(in, strings);
+            final int javaBlockStateId = in.readInt();
+            if (javaBlockStateId < 0 || javaBlockStateId >= javaBlockStates.length) {
+                throw new IOException("Unknown java block state id: " + javaBlockStateId);
+            }
+            bedrockToJavaBlockStates.put(bedrockBlockState, javaBlockStates[javaBlockStateId]);
+        }
+        return new BlockStateMappings(Arrays.asList(javaBlockStates), bedrockToJavaBlockStates);
+    }
+
+    public static Map<String, List<String>> readViaMappings(final DataInputStream in) throws IOException {
+        final int sectionCount = in.readInt();
+        final Map<String, List<String>> sections = new HashMap<>(sectionCount * 2);
+        for (int i = 0; i < sectionCount; i++) {
+            final String section = in.readUTF();
+            final String[] entries = new String[in.readInt()];
+            for (int j = 0; j < entries.length; j++) {
+                entries[j] = in.readUTF();
+            }
+            sections.put(section, Arrays.asList(entries));
+        }
+        return sections;
+    }
+
+    public static List<ItemMapping> readItemMappings(final DataInputStream in) throws IOException {
+        final int itemCount = in.readInt();
+        final List<ItemMapping> itemMappings = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            final String bedrockIdentifier = in.readUTF();
+            final boolean blockItem = in.readBoolean();
+            final int mappingCount = in.readInt();
+            final List<JavaItemMapping> mappings = new ArrayList<>(mappingCount);
+            for (int j = 0; j < mappingCount; j++) {
+                final String blockState = blockItem ? in.readUTF() : null;
+                final Integer meta = !blockItem && in.readBoolean() ? in.readInt() : null;
+                final String javaIdentifier = in.readUTF();
+                final String javaDisplayName = in.readBoolean() ? in.readUTF() : null;
+                final String javaTag = in.readBoolean() ? in.readUTF() : null;
+                mappings.add(new JavaItemMapping(blockState, meta, javaIdentifier, javaDisplayName, javaTag));
+            }
+            itemMappings.add(new ItemMapping(bedrockIdentifier, blockItem, mappings));
+        }
+        return itemMappings;
+    }
+
+    private static void writeBlockStateMappings(final DataOutputStream out, final BlockStateMappings blockStateMappings) throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final DataOutputStream bodyOut = new DataOutputStream(body);
+
+        final Map<BlockState, Integer> javaBlockStateIds = new HashMap<>(blockStateMappings.javaBlockStates.size());
+        bodyOut.writeInt(blockStateMappings.javaBlockStates.size());
+        for (int i = 0; i < blockStateMappings.javaBlockStates.size(); i++) {
+            final BlockState javaBlockState = blockStateMappings.javaBlockStates.get(i);
+            if (javaBlockStateIds.put(javaBlockState, i) != null) {
+                throw new IOException("Duplicate java block state: " + javaBlockState.toBlockStateString());
+            }
+            writeBlockState(bodyOut, javaBlockState, strings);
+        }
+        bodyOut.writeInt(blockStateMappings.bedrockToJavaBlockStates.size());
+        for (Map.Entry<BlockState, BlockState> entry : blockStateMappings.bedrockToJavaBlockStates.entrySet()) {
+            writeBlockState(bodyOut, entry.getKey(), strings);
+            bodyOut.writeInt(javaBlockStateIds.get(entry.getValue()));
+        }
+        bodyOut.flush();
+
+        out.writeInt(strings.size());
+        for (String string : strings.keySet()) {
+            out.writeUTF(string);
+        }
+        body.writeTo(out);
+    }
+
+    private static void writeViaMappings(final DataOutputStream out, final Map<String, List<String>> sections) throws IOException {
+        out.writeInt(sections.size());
+        for (Map.Entry<String, List<String>> section : sections.entrySet()) {
+            out.writeUTF(section.getKey());
+            out.writeInt(section.getValue().size());
+            for (String entry : section.getValue()) {
+                out.writeUTF(entry);
+            }
+        }
+    }
+
+    private static void writeItemMappings(final DataOutputStream out, final List<ItemMapping> itemMappings) throws IOException {
+        out.writeInt(itemMappings.size());
+        for (ItemMapping itemMapping : itemMappings) {
+            out.writeUTF(itemMapping.bedrockIdentifier);
+            out.writeBoolean(itemMapping.blockItem);
+            out.writeInt(itemMapping.mappings.size());
+            for (JavaItemMapping mapping : itemMapping.mappings) {
+                if (itemMapping.blockItem) {
+                    out.writeUTF(mapping.blockState);
+                } else {
+                    out.writeBoolean(mapping.meta != null);
+                    if (mapping.meta != null) {
+                        out.writeInt(mapping.meta);
+                    }
+                }
+                out.writeUTF(mapping.javaIdentifier);
+                writeOptionalUTF(out, mapping.javaDisplayName);
+                writeOptionalUTF(out, mapping.javaTag);
+            }
+        }
+    }
+
+    private static BlockState readBlockState(final DataInputStream in, final String[] strings) throws IOException {
+        final String namespace = strings[in.readUnsignedShort()];
+        final String identifier = strings[in.readUnsignedShort()];
+        final int propertyCount = in.readUnsignedByte();
+        if (propertyCount == 0) {
+            return new BlockState(namespace, identifier, Collections.emptyMap());
+        }
+
+        final Map<String, String> properties = new HashMap<>(propertyCount * 2);
+        for (int i = 0; i < propertyCount; i++) {
+            properties.put(strings[in.readUnsignedShort()], strings[in.readUnsignedShort()]);
+        }
+        return new BlockState(namespace, identifier, properties);
+    }
+
+    private static void writeBlockState(final DataOutputStream out, final BlockState blockState, final Map<String, Integer> strings) throws IOException {
+        if (blockState.properties().size() > 0xFF) {
+            throw new IOException("Too many properties in block state " + blockState.toBlockStateString());
+        }
+        out.writeShort(intern(blockState.namespace(), strings));
+        out.writeShort(intern(blockState.identifier(), strings));
+        out.writeByte(blockState.properties().size());
+        for (Map.Entry<String, String> property : blockState.properties().entrySet()) {
+            out.writeShort(intern(property.getKey(), strings));
+            out.writeShort(intern(property.getValue(), strings));
+        }
+    }
+
+    private static int intern(final String string, final Map<String, Integer> strings) throws IOException {
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            if (index > 0xFFFF) {
+                throw new IOException("Too many distinct strings in mapping data");
+            }
+            strings.put(string, index);
+        }
+        return index;
+    }
+
+    private static void writeOptionalUTF(final DataOutputStream out, final String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static void writeTable(final File outputDir, final Table table, final SourceDigester sourceDigester, final TableWriter writer) throws IOException {
+        final File file = new File(outputDir, table.file);
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Failed to create directory " + file.getParentFile());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(table.magic);
+            out.writeInt(VERSION);
+            out.write(digest(table, sourceDigester));
+            writer.write(out);
+        }
+    }
+
+    private static JsonObject readJson(final File file) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return JsonParser.parseReader(reader).getAsJsonObject();
+        }
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface SourceDigester {
+
+        byte[] digest(final String source) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    public interface TableReader<T> {
+
+        T read(final DataInputStream in) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    private interface TableWriter {
+
+        void write(final DataOutputStream out) throws IOException;
+
+    }
+
+    public static class BlockStateMappings {
+
+        private final List<BlockState> javaBlockStates;
+        private final Map<BlockState, BlockState> bedrockToJavaBlockStates;
+
+        private BlockStateMappings(final List<BlockState> javaBlockStates, final Map<BlockState, BlockState> bedrockToJavaBlockStates) {
+            this.javaBlockStates = javaBlockStates;
+            this.bedrockToJavaBlockStates = bedrockToJavaBlockStates;
+        }
+
+        public List<BlockState> javaBlockStates() {
+            return this.javaBlockStates;
+        }
+
+        public Map<BlockState, BlockState> bedrockToJavaBlockStates() {
+            return this.bedrockToJavaBlockStates;
+        }
+
+    }
+
+    public static class ItemMapping {
+
+        private final String bedrockIdentifier;
+        private final boolean blockItem;
+        private final List<JavaItemMapping> mappings;
+
+        private ItemMapping(final String bedrockIdentifier, final boolean blockItem, final List<JavaItemMapping> mappings) {
+            this.bedrockIdentifier = bedrockIdentifier;
+            this.blockItem = blockItem;
+            this.mappings = mappings;
+        }
+
+        public String bedrockIdentifier() {
+            return this.bedrockIdentifier;
+        }
+
+        public boolean blockItem() {
+            return this.blockItem;
+        }
+
+        public List<JavaItemMapping> mappings() {
+            return this.mappings;
+        }
+
+    }
+
+    public static class JavaItemMapping {
+
+        private final String blockState; // Only set for block items
+        private final Integer meta; // Only set for meta items, null is the fallback for all other meta values
+        private final String javaIdentifier;
+        private final String javaDisplayName;
+        private final String javaTag;
+
+        private JavaItemMapping(final String blockState, final Integer meta, final String javaIdentifier, final String javaDisplayName, final String javaTag) {
+            this.blockState = blockState;
+            this.meta = meta;
+            this.javaIdentifier = javaIdentifier;
+            this.javaDisplayName = javaDisplayName;
+            this.javaTag = javaTag;
+        }
+
+        public String blockState() {
+            return this.blockState;
+        }
+
+        public Integer meta() {
+            return this.meta;
+        }
+
+        public String javaIdentifier() {
+            return this.javaIdentifier;
+        }
+
+        public String javaDisplayName() {
+            return this.javaDisplayName;
+        }
+
+        public String javaTag() {
+            return this.javaTag;
+        }
+
+    }
+
+}
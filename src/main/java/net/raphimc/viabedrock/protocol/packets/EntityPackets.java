@@ -141,18 +141,8 @@ public class EntityPackets {
             entity.setRotation(new Position3f(pitch, yaw, headYaw));
             entity.setOnGround(onGround);
 
-            final PacketWrapper entityHeadLook = PacketWrapper.create(ClientboundPackets1_20_3.ENTITY_HEAD_LOOK, wrapper.user());
-            entityHeadLook.write(Type.VAR_INT, entity.javaId()); // entity id
-            entityHeadLook.write(Type.BYTE, MathUtil.float2Byte(headYaw)); // head yaw
-            entityHeadLook.send(BedrockProtocol.class);
-
-            wrapper.write(Type.VAR_INT, entity.javaId()); // entity id
-            wrapper.write(Type.DOUBLE, (double) position.x()); // x
-            wrapper.write(Type.DOUBLE, (double) position.y() - entity.eyeOffset()); // y
-            wrapper.write(Type.DOUBLE, (double) position.z()); // z
-            wrapper.write(Type.BYTE, MathUtil.float2Byte(yaw)); // yaw
-            wrapper.write(Type.BYTE, MathUtil.float2Byte(pitch)); // pitch
-            wrapper.write(Type.BOOLEAN, onGround); // on ground
+            entity.sendHeadYawPacketToClient();
+            entity.writeMovementPacketToClient(wrapper, teleported);
         });
         protocol.registerClientbound(ClientboundBedrockPackets.MOVE_ENTITY_DELTA, ClientboundPackets1_20_3.ENTITY_TELEPORT, wrapper -> {
             final EntityTracker entityTracker = wrapper.user().get(EntityTracker.class);
@@ -229,21 +219,11 @@ public class EntityPackets {
             }
             if (hasHeadYaw) {
                 entity.setRotation(new Position3f(entity.rotation().x(), entity.rotation().y(), MathUtil.byte2Float(wrapper.read(Type.BYTE))));
-
-                final PacketWrapper entityHeadLook = PacketWrapper.create(ClientboundPackets1_20_3.ENTITY_HEAD_LOOK, wrapper.user());
-                entityHeadLook.write(Type.VAR_INT, entity.javaId()); // entity id
-                entityHeadLook.write(Type.BYTE, MathUtil.float2Byte(entity.rotation().z())); // head yaw
-                entityHeadLook.send(BedrockProtocol.class);
+                entity.sendHeadYawPacketToClient();
             }
             entity.setOnGround(onGround);
 
-            wrapper.write(Type.VAR_INT, entity.javaId()); // entity id
-            wrapper.write(Type.DOUBLE, (double) entity.position().x()); // x
-            wrapper.write(Type.DOUBLE, (double) entity.position().y() - entity.eyeOffset()); // y
-            wrapper.write(Type.DOUBLE, (double) entity.position().z()); // z
-            wrapper.write(Type.BYTE, MathUtil.float2Byte(entity.rotation().y())); // yaw
-            wrapper.write(Type.BYTE, MathUtil.float2Byte(entity.rotation().x())); // pitch
-            wrapper.write(Type.BOOLEAN, entity.isOnGround()); // on ground
+            entity.writeMovementPacketToClient(wrapper, teleported);
         });
         protocol.registerClientbound(ClientboundBedrockPackets.SET_ENTITY_MOTION, ClientboundPackets1_20_3.ENTITY_VELOCITY, wrapper -> {
             final EntityTracker entityTracker = wrapper.user().get(EntityTracker.class);
@@ -151,18 +151,8 @@ public class OtherPlayerPackets {
                 return;
             }
 
-            wrapper.write(Type.VAR_INT, entity.javaId()); // entity id
-            wrapper.write(Type.DOUBLE, (double) position.x()); // x
-            wrapper.write(Type.DOUBLE, (double) position.y() - entity.eyeOffset()); // y
-            wrapper.write(Type.DOUBLE, (double) position.z()); // z
-            wrapper.write(Type.BYTE, MathUtil.float2Byte(rotation.y())); // yaw
-            wrapper.write(Type.BYTE, MathUtil.float2Byte(rotation.x())); // pitch
-            wrapper.write(Type.BOOLEAN, onGround); // on ground
-
-            final PacketWrapper entityHeadLook = PacketWrapper.create(ClientboundPackets1_20_3.ENTITY_HEAD_LOOK, wrapper.user());
-            entityHeadLook.write(Type.VAR_INT, entity.javaId()); // entity id
-            entityHeadLook.write(Type.BYTE, MathUtil.float2Byte(rotation.z())); // head yaw
-            entityHeadLook.send(BedrockProtocol.class);
+            entity.writeMovementPacketToClient(wrapper, mode == MovePlayerModes.TELEPORT || mode == MovePlayerModes.RESPAWN);
+            entity.sendHeadYawPacketToClient();
         });
     }
 
@@ -18,14 +18,18 @@
 package net.raphimc.viabedrock.protocol.packets;
 
 import com.viaversion.viaversion.api.Via;
+import com.viaversion.viaversion.api.connection.UserConnection;
 import com.viaversion.viaversion.api.protocol.packet.PacketWrapper;
+import com.viaversion.viaversion.api.protocol.packet.State;
 import com.viaversion.viaversion.api.protocol.remapper.PacketHandler;
 import com.viaversion.viaversion.api.type.Type;
 import com.viaversion.viaversion.protocols.protocol1_20_2to1_20.packet.ServerboundConfigurationPackets1_20_2;
 import com.viaversion.viaversion.protocols.protocol1_20_3to1_20_2.packet.ClientboundConfigurationPackets1_20_3;
+import com.viaversion.viaversion.protocols.protocol1_20_3to1_20_2.packet.ClientboundPackets1_20_3;
 import com.viaversion.viaversion.util.Pair;
 import com.viaversion.viaversion.util.Triple;
 import net.raphimc.viabedrock.ViaBedrock;
+import net.raphimc.viabedrock.api.http.ConvertedPackCache;
 import net.raphimc.viabedrock.api.model.ResourcePack;
 import net.raphimc.viabedrock.api.util.TextUtil;
 import net.raphimc.viabedrock.protocol.BedrockProtocol;
@@ -39,6 +43,7 @@ import net.raphimc.viabedrock.protocol.providers.ResourcePackProvider;
 import net.raphimc.viabedrock.protocol.storage.ResourcePacksStorage;
 import net.raphimc.viabedrock.protocol.types.BedrockTypes;
 
+import java.io.File;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
@@ -78,16 +83,10 @@ public class ResourcePackPackets {
             if (ViaBedrock.getConfig().shouldTranslateResourcePacks() && wrapper.user().getProtocolInfo().getProtocolVersion() >= ProtocolConstants.JAVA_VERSION.getVersion()) {
                 final UUID httpToken = UUID.randomUUID();
                 ViaBedrock.getResourcePackServer().addConnection(httpToken, wrapper.user());
-
-                wrapper.write(Type.UUID, UUID.randomUUID()); // pack id
-                wrapper.write(Type.STRING, ViaBedrock.getResourcePackServer().getUrl() + "?token=" + httpToken); // url
-                wrapper.write(Type.STRING, ""); // hash
-                wrapper.write(Type.BOOLEAN, false); // requires accept
-                wrapper.write(Type.OPTIONAL_TAG, TextUtil.stringToNbt(
-                        "\n§aIf you press 'Yes', the resource packs will be downloaded and converted to the Java Edition format. " +
-                                "This may take a while, depending on your internet connection and the size of the packs. " +
-                                "If you press 'No', you can join without loading the resource packs but you will have a worse gameplay experience.")
-                ); // prompt message
+                resourcePacksStorage.setJavaPackOfferKey(ConvertedPackCache.createOfferKey(resourcePacks));
+                resourcePacksStorage.setAdvertisedJavaPackHash(ViaBedrock.getResourcePackServer().getPackCache().getOfferedHash(resourcePacksStorage.getJavaPackOfferKey()));
+                resourcePacksStorage.setJavaPackUrl(ViaBedrock.getResourcePackServer().getUrl() + "?token=" + httpToken);
+                writeJavaPackPush(wrapper, resourcePacksStorage);
             } else {
                 wrapper.cancel();
                 final PacketWrapper resourcePack = PacketWrapper.create(ServerboundConfigurationPackets1_20_2.RESOURCE_PACK, wrapper.user());
@@ -118,16 +117,25 @@ public class ResourcePackPackets {
                 resourcePack.setHash(hash);
                 resourcePack.setPremium(premium);
                 resourcePack.setType(type);
-                resourcePack.setCompressedDataLength((int) compressedPackSize, maxChunkSize);
+                final File downloadFile = Via.getManager().getProviders().get(ResourcePackProvider.class).getDownloadFile(resourcePack);
+                if (downloadFile != null) {
+                    resourcePack.setCompressedDataLength((int) compressedPackSize, maxChunkSize, downloadFile);
+                    wrapper.user().getChannel().closeFuture().addListener(future -> resourcePack.closeDownload());
+                } else {
+                    resourcePack.setCompressedDataLength((int) compressedPackSize, maxChunkSize);
+                }
+
+                // Only a window of chunks is requested at once. Every received chunk requests the next one.
+                for (int i = 0; i < ViaBedrock.getConfig().getResourcePackDownloadWindow(); i++) {
+                    final int chunkIndex = resourcePack.nextChunkRequest();
+                    if (chunkIndex == -1) break;
+                    sendChunkRequest(wrapper, idAndVersion, chunkIndex);
+                }
             } else { // Mojang client requests data anyway
                 ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Received RESOURCE_PACK_DATA_INFO for unknown pack: " + idAndVersion.key());
-            }
-
-            for (int i = 0; i < actualChunkCount; i++) {
-                final PacketWrapper resourcePackChunkRequest = wrapper.create(ClientboundBedrockPackets.RESOURCE_PACK_CHUNK_REQUEST);
-                resourcePackChunkRequest.write(BedrockTypes.PACK_ID_AND_VERSION, idAndVersion); // pack id and version
-                resourcePackChunkRequest.write(BedrockTypes.INT_LE, i); // chunk index
-                resourcePackChunkRequest.sendToServer(BedrockProtocol.class);
+                for (int i = 0; i < actualChunkCount; i++) {
+                    sendChunkRequest(wrapper, idAndVersion, i);
+                }
             }
         });
         protocol.registerClientbound(ClientboundBedrockPackets.RESOURCE_PACK_CHUNK_DATA, null, wrapper -> {
@@ -147,6 +155,13 @@ public class ResourcePackPackets {
                 final ResourcePack resourcePack = resourcePacksStorage.getPack(idAndVersion.key());
                 if (resourcePack.processDataChunk(chunkIndex, data)) {
                     Via.getManager().getProviders().get(ResourcePackProvider.class).addPack(resourcePack);
+                    ViaBedrock.getResourcePackStore().share(resourcePack);
+                    resourcePacksStorage.addSharedPack(resourcePack.packId());
+                } else {
+                    final int nextChunkIndex = resourcePack.nextChunkRequest();
+                    if (nextChunkIndex != -1) {
+                        sendChunkRequest(wrapper, idAndVersion, nextChunkIndex);
+                    }
                 }
             } else {
                 ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Received RESOURCE_PACK_CHUNK_DATA for unknown pack: " + idAndVersion.key());
@@ -205,7 +220,11 @@ public class ResourcePackPackets {
         protocol.registerServerboundTransition(ServerboundConfigurationPackets1_20_2.RESOURCE_PACK, ServerboundBedrockPackets.RESOURCE_PACK_CLIENT_RESPONSE, wrapper -> {
             final ResourcePacksStorage resourcePacksStorage = wrapper.user().get(ResourcePacksStorage.class);
 
-            wrapper.read(Type.UUID); // pack id
+            final UUID packId = wrapper.read(Type.UUID); // pack id
+            if (resourcePacksStorage.getJavaPackId() != null && !resourcePacksStorage.getJavaPackId().equals(packId)) {
+                wrapper.cancel(); // Status of a push which has been replaced
+                return;
+            }
             final int status = wrapper.read(Type.VAR_INT); // status
             switch (status) {
                 case JavaResourcePackStatus.SUCCESSFULLY_LOADED:
@@ -240,12 +259,17 @@ public class ResourcePackPackets {
                     break;
                 case JavaResourcePackStatus.ACCEPTED:
                     resourcePacksStorage.setJavaClientWaitingForPack(true);
+                    wrapper.user().getChannel().closeFuture().addListener(future -> resourcePacksStorage.releaseSharedPacks());
                     final Set<String> missingPacks = new HashSet<>();
                     for (ResourcePack pack : resourcePacksStorage.getPacks()) {
                         if (resourcePacksStorage.isPreloaded(pack.packId())) continue;
 
-                        if (Via.getManager().getProviders().get(ResourcePackProvider.class).hasPack(pack)) {
+                        if (ViaBedrock.getResourcePackStore().acquire(pack)) {
+                            resourcePacksStorage.addSharedPack(pack.packId());
+                        } else if (Via.getManager().getProviders().get(ResourcePackProvider.class).hasPack(pack)) {
                             Via.getManager().getProviders().get(ResourcePackProvider.class).loadPack(pack);
+                            ViaBedrock.getResourcePackStore().share(pack);
+                            resourcePacksStorage.addSharedPack(pack.packId());
                         } else {
                             missingPacks.add(pack.packId() + "_" + pack.version());
                         }
@@ -270,4 +294,43 @@ public class ResourcePackPackets {
         });
     }
 
+    /**
+     * Pushes the java resource pack again with the hash of the latest conversion. The client verifies the pack against the advertised hash and would reject it otherwise.
+     */
+    public static void resendJavaPackPush(final UserConnection user, final String hash) {
+        user.getChannel().eventLoop().submit(() -> {
+            if (!user.getChannel().isActive()) return;
+
+            try {
+                final ResourcePacksStorage resourcePacksStorage = user.get(ResourcePacksStorage.class);
+                resourcePacksStorage.setAdvertisedJavaPackHash(hash);
+                final PacketWrapper resourcePackPush = PacketWrapper.create(user.getProtocolInfo().getServerState() == State.PLAY ? ClientboundPackets1_20_3.RESOURCE_PACK_PUSH : ClientboundConfigurationPackets1_20_3.RESOURCE_PACK_PUSH, user);
+                writeJavaPackPush(resourcePackPush, resourcePacksStorage);
+                resourcePackPush.send(BedrockProtocol.class);
+            } catch (Throwable e) {
+                BedrockProtocol.kickForIllegalState(user, "Error sending resource pack push packet. See console for details.", e);
+            }
+        });
+    }
+
+    private static void writeJavaPackPush(final PacketWrapper wrapper, final ResourcePacksStorage resourcePacksStorage) {
+        resourcePacksStorage.setJavaPackId(UUID.randomUUID());
+        wrapper.write(Type.UUID, resourcePacksStorage.getJavaPackId()); // pack id
+        wrapper.write(Type.STRING, resourcePacksStorage.getJavaPackUrl()); // url
+        wrapper.write(Type.STRING, resourcePacksStorage.getAdvertisedJavaPackHash()); // hash
+        wrapper.write(Type.BOOLEAN, false); // requires accept
+        wrapper.write(Type.OPTIONAL_TAG, TextUtil.stringToNbt(
+                "\n§aIf you press 'Yes', the resource packs will be downloaded and converted to the Java Edition format. " +
+                        "This may take a while, depending on your internet connection and the size of the packs. " +
+                        "If you press 'No', you can join without loading the resource packs but you will have a worse gameplay experience.")
+        ); // prompt message
+    }
+
+    private static void sendChunkRequest(final PacketWrapper wrapper, final Pair<UUID, String> idAndVersion, final int chunkIndex) throws Exception {
+        final PacketWrapper resourcePackChunkRequest = wrapper.create(ClientboundBedrockPackets.RESOURCE_PACK_CHUNK_REQUEST);
+        resourcePackChunkRequest.write(BedrockTypes.PACK_ID_AND_VERSION, idAndVersion); // pack id and version
+        resourcePackChunkRequest.write(BedrockTypes.INT_LE, chunkIndex); // chunk index
+        resourcePackChunkRequest.sendToServer(BedrockProtocol.class);
+    }
+
 }
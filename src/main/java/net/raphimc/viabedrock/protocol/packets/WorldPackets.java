@@ -298,7 +298,7 @@ public class WorldPackets {
                     try {
                         if (result == SubChunkResults.SUCCESS_ALL_AIR) {
                             if (chunkTracker.mergeSubChunk(absolute.x(), absolute.y(), absolute.z(), new BedrockChunkSectionImpl(), new ArrayList<>())) {
-                                chunkTracker.sendChunkInNextTick(absolute.x(), absolute.z());
+                                chunkTracker.sendSubChunkInNextTick(absolute.x(), absolute.y(), absolute.z());
                             }
                         } else if (result == SubChunkResults.SUCCESS) {
                             final ByteBuf dataBuf = Unpooled.wrappedBuffer(combinedData);
@@ -319,7 +319,7 @@ public class WorldPackets {
                                 ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Error reading sub chunk data", e);
                             }
                             if (chunkTracker.mergeSubChunk(absolute.x(), absolute.y(), absolute.z(), section, blockEntities)) {
-                                chunkTracker.sendChunkInNextTick(absolute.x(), absolute.z());
+                                chunkTracker.sendSubChunkInNextTick(absolute.x(), absolute.y(), absolute.z());
                             }
                         } else {
                             ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Received sub chunk with result " + result);
@@ -394,14 +394,7 @@ public class WorldPackets {
             for (Map.Entry<Position, List<BlockChangeRecord>> entry : blockChanges.entrySet()) {
                 final Position chunkPosition = entry.getKey();
                 final List<BlockChangeRecord> changes = entry.getValue();
-                long chunkKey = (chunkPosition.x() & 0x3FFFFFL) << 42;
-                chunkKey |= (chunkPosition.z() & 0x3FFFFFL) << 20;
-                chunkKey |= (chunkPosition.y() & 0xFFFL);
-
-                final PacketWrapper multiBlockChange = wrapper.create(ClientboundPackets1_20_3.MULTI_BLOCK_CHANGE);
-                multiBlockChange.write(Type.LONG, chunkKey); // chunk position
-                multiBlockChange.write(Type.VAR_LONG_BLOCK_CHANGE_RECORD_ARRAY, changes.toArray(new BlockChangeRecord[0])); // block change records
-                multiBlockChange.send(BedrockProtocol.class);
+                PacketFactory.sendMultiBlockChange(wrapper.user(), chunkPosition.x(), chunkPosition.y(), chunkPosition.z(), changes.toArray(new BlockChangeRecord[0]));
             }
             for (Map.Entry<Position, BlockEntity> entry : blockEntities.entrySet()) {
                 PacketFactory.sendBlockEntityData(wrapper.user(), entry.getKey(), entry.getValue());
@@ -20,6 +20,8 @@ package net.raphimc.viabedrock.protocol.providers;
 import com.viaversion.viaversion.api.platform.providers.Provider;
 import net.raphimc.viabedrock.api.model.ResourcePack;
 
+import java.io.File;
+
 public abstract class ResourcePackProvider implements Provider {
 
     public abstract boolean hasPack(final ResourcePack pack) throws Exception;
@@ -28,4 +30,12 @@ public abstract class ResourcePackProvider implements Provider {
 
     public abstract void addPack(final ResourcePack pack) throws Exception;
 
+    /**
+     * @param pack The pack which is about to be downloaded
+     * @return The file in which the download should be stored, so it can be resumed after a reconnect, or null to download the pack into memory
+     */
+    public File getDownloadFile(final ResourcePack pack) {
+        return null;
+    }
+
 }
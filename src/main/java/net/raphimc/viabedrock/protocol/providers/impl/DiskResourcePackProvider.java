@@ -19,17 +19,53 @@ package net.raphimc.viabedrock.protocol.providers.impl;
 
 import net.raphimc.viabedrock.ViaBedrock;
 import net.raphimc.viabedrock.api.model.ResourcePack;
+import net.raphimc.viabedrock.api.util.StringUtil;
 import net.raphimc.viabedrock.protocol.providers.ResourcePackProvider;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 
+/**
+ * Stores the original compressed data of server resource packs along with an index of their contents.<br>
+ * Loading a stored pack only maps the archive into memory and reads the index. The archive isn't hashed, parsed or validated again.
+ */
 public class DiskResourcePackProvider extends ResourcePackProvider {
 
+    private static final int INDEX_MAGIC = 0x56425049; // VBPI
+    private static final int INDEX_VERSION = 1;
+    private static final String DOWNLOAD_FILE_EXTENSION = ".part";
+    private static final long DOWNLOAD_FILE_MAX_AGE = TimeUnit.DAYS.toMillis(7);
+
+    private final AtomicBoolean removedStaleDownloadFiles = new AtomicBoolean();
+
     @Override
     public boolean hasPack(final ResourcePack pack) {
-        return this.getPackFile(pack).isFile();
+        final File packFile = this.getPackFile(pack);
+        final File indexFile = this.getIndexFile(pack);
+        if (!indexFile.isFile()) {
+            return packFile.isFile(); // Packs stored by older versions are re-zipped contents without an index
+        }
+
+        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (this.readIndexHeader(dataInputStream, pack, packFile)) {
+                return true;
+            }
+        } catch (IOException e) {
+            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Failed to read resource pack index: " + indexFile.getName(), e);
+        }
+        packFile.delete();
+        indexFile.delete();
+        return false;
     }
 
     @Override
@@ -37,20 +73,155 @@ public class DiskResourcePackProvider extends ResourcePackProvider {
         if (!this.hasPack(pack)) {
             throw new IOException("Pack not found");
         }
-        final byte[] data = Files.readAllBytes(this.getPackFile(pack).toPath());
 
-        pack.setContentKey("");
-        pack.setCompressedDataLength(data.length, data.length);
-        pack.processDataChunk(0, data);
+        final File indexFile = this.getIndexFile(pack);
+        if (!indexFile.isFile()) {
+            final byte[] data = Files.readAllBytes(this.getPackFile(pack).toPath());
+            pack.setContentKey("");
+            pack.setCompressedDataLength(data.length, data.length);
+            pack.processDataChunk(0, data);
+            return;
+        }
+
+        final File packFile = this.getPackFile(pack);
+        final MappedByteBuffer archive;
+        try (FileChannel fileChannel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ)) {
+            archive = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (!this.readIndexHeader(dataInputStream, pack, packFile)) {
+                throw new IOException("Resource pack index is outdated: " + indexFile.getName());
+            }
+            pack.setContent(ResourcePack.Content.readIndex(archive, dataInputStream));
+        }
     }
 
     @Override
     public void addPack(final ResourcePack pack) throws IOException {
-        Files.write(this.getPackFile(pack).toPath(), pack.content().toZip());
+        final File packFile = this.getPackFile(pack);
+        final File indexFile = this.getIndexFile(pack);
+        indexFile.delete();
+
+        final ByteBuffer archive = pack.content().archive();
+        if (archive == null) {
+            this.replaceFile(packFile, ByteBuffer.wrap(pack.content().toZip()));
+            return;
+        }
+
+        final byte[] hash;
+        if (pack.hash() != null && pack.hash().length != 0) {
+            hash = pack.hash(); // Already verified by the download
+        } else {
+            try {
+                final MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                sha256.update(archive.duplicate());
+                hash = sha256.digest();
+            } catch (Exception e) {
+                throw new IOException("Failed to hash resource pack", e);
+            }
+        }
+
+        this.replaceFile(packFile, archive);
+
+        // The index is written last, so it only exists if the archive has been stored completely
+        final File tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+        try {
+            try (DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                dataOutputStream.writeInt(INDEX_MAGIC);
+                dataOutputStream.writeInt(INDEX_VERSION);
+                dataOutputStream.writeLong(pack.packId().getMostSignificantBits());
+                dataOutputStream.writeLong(pack.packId().getLeastSignificantBits());
+                dataOutputStream.writeUTF(pack.version());
+                dataOutputStream.writeLong(packFile.length());
+                dataOutputStream.writeShort(hash.length);
+                dataOutputStream.write(hash);
+                pack.content().writeIndex(dataOutputStream);
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    @Override
+    public File getDownloadFile(final ResourcePack pack) {
+        if (pack.hash() == null || pack.hash().length == 0) {
+            return null; // Partial downloads can't be verified without a hash
+        }
+        if (this.removedStaleDownloadFiles.compareAndSet(false, true)) {
+            this.removeStaleDownloadFiles();
+        }
+
+        return new File(ViaBedrock.getPlatform().getServerPacksFolder(), pack.packId() + "_" + pack.version() + "_" + StringUtil.toHex(pack.hash()) + DOWNLOAD_FILE_EXTENSION);
+    }
+
+    /**
+     * Removes partial downloads which haven't been resumed for a while. Their file names contain the pack hash, so downloads of outdated pack versions are never resumed.
+     */
+    private void removeStaleDownloadFiles() {
+        final File[] files = ViaBedrock.getPlatform().getServerPacksFolder().listFiles((dir, name) -> name.endsWith(DOWNLOAD_FILE_EXTENSION));
+        if (files == null) {
+            return;
+        }
+
+        final long cutoff = System.currentTimeMillis() - DOWNLOAD_FILE_MAX_AGE;
+        for (File file : files) {
+            if (file.lastModified() < cutoff && file.delete()) {
+                ViaBedrock.getPlatform().getLogger().log(Level.INFO, "Removed stale resource pack download: " + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Reads the header of a pack index and checks whether it belongs to the given pack.<br>
+     * The stored hash is attached to the pack if the server didn't send one.
+     *
+     * @return true if the index matches the pack and its stored archive
+     */
+    private boolean readIndexHeader(final DataInputStream dataInputStream, final ResourcePack pack, final File packFile) throws IOException {
+        if (dataInputStream.readInt() != INDEX_MAGIC || dataInputStream.readInt() != INDEX_VERSION) {
+            return false;
+        }
+        final UUID packId = new UUID(dataInputStream.readLong(), dataInputStream.readLong());
+        final String version = dataInputStream.readUTF();
+        final long archiveLength = dataInputStream.readLong();
+        final byte[] hash = new byte[dataInputStream.readUnsignedShort()];
+        dataInputStream.readFully(hash);
+        if (!pack.packId().equals(packId) || !pack.version().equals(version) || archiveLength != packFile.length() || archiveLength != pack.compressedDataLength()) {
+            return false;
+        }
+
+        if (pack.hash() == null || pack.hash().length == 0) {
+            pack.setHash(hash);
+        } else if (!MessageDigest.isEqual(pack.hash(), hash)) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Atomically replaces a file. Another connection might have the current archive memory mapped, so it must never be truncated in place.
+     */
+    private void replaceFile(final File file, final ByteBuffer data) throws IOException {
+        final File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (FileChannel fileChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    fileChannel.write(data);
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
     }
 
     private File getPackFile(final ResourcePack pack) {
         return new File(ViaBedrock.getPlatform().getServerPacksFolder(), pack.packId() + "_" + pack.version() + ".mcpack");
     }
 
+    private File getIndexFile(final ResourcePack pack) {
+        return new File(ViaBedrock.getPlatform().getServerPacksFolder(), pack.packId() + "_" + pack.version() + ".index");
+    }
+
 }
@@ -20,10 +20,9 @@ package net.raphimc.viabedrock.protocol.rewriter;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import com.viaversion.viaversion.api.connection.StorableObject;
-import com.viaversion.viaversion.libs.fastutil.ints.Int2IntMap;
-import com.viaversion.viaversion.libs.fastutil.ints.Int2IntOpenHashMap;
-import com.viaversion.viaversion.libs.fastutil.ints.Int2ObjectMap;
-import com.viaversion.viaversion.libs.fastutil.ints.Int2ObjectOpenHashMap;
+import com.viaversion.viaversion.libs.fastutil.ints.*;
+import com.viaversion.viaversion.libs.fastutil.objects.Object2IntMap;
+import com.viaversion.viaversion.libs.fastutil.objects.Object2IntOpenHashMap;
 import com.viaversion.viaversion.libs.opennbt.tag.builtin.*;
 import com.viaversion.viaversion.util.Key;
 import net.raphimc.viabedrock.ViaBedrock;
@@ -31,41 +30,42 @@ import net.raphimc.viabedrock.api.chunk.blockstate.BlockStateSanitizer;
 import net.raphimc.viabedrock.api.model.BedrockBlockState;
 import net.raphimc.viabedrock.api.model.BlockState;
 import net.raphimc.viabedrock.api.util.BlockStateHasher;
-import net.raphimc.viabedrock.api.util.CombinationUtil;
 import net.raphimc.viabedrock.api.util.HashedPaletteComparator;
 import net.raphimc.viabedrock.protocol.BedrockProtocol;
 import net.raphimc.viabedrock.protocol.model.BlockProperties;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class BlockStateRewriter implements StorableObject {
 
     public static final String TAG_WATER = "water";
     public static final String TAG_ITEM_FRAME = "item_frame";
 
-    private final Int2IntMap blockStateIdMappings = new Int2IntOpenHashMap(); // Bedrock -> Java
-    private final Int2IntMap legacyBlockStateIdMappings = new Int2IntOpenHashMap(); // Bedrock -> Bedrock
-    private final BiMap<BlockState, Integer> blockStateMappings = HashBiMap.create(); // Bedrock -> Bedrock
-    private final Int2ObjectMap<String> blockStateTags = new Int2ObjectOpenHashMap<>(); // Bedrock
-    private final BlockStateSanitizer blockStateSanitizer;
+    private static final int MAX_CACHED_MAPPINGS = 16;
+    private static final int PARALLEL_HASHING_THRESHOLD = 4096;
+    private static final int MAX_RESOLVED_BLOCK_STATE_TAGS = 8192;
+    private static final Comparator<BedrockBlockState> BLOCK_STATE_COMPARATOR = (a, b) -> HashedPaletteComparator.INSTANCE.compare(a.namespacedIdentifier(), b.namespacedIdentifier());
+    private static final Mappings[] VANILLA_MAPPINGS = new Mappings[2]; // Non hashed, hashed
+    private static final Map<MappingsKey, Mappings> CUSTOM_MAPPINGS = new LinkedHashMap<MappingsKey, Mappings>(MAX_CACHED_MAPPINGS, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MappingsKey, Mappings> eldest) {
+            return this.size() > MAX_CACHED_MAPPINGS;
+        }
+    };
 
-    public BlockStateRewriter(final BlockProperties[] blockProperties, final boolean hashedRuntimeBlockIds) {
-        this.blockStateIdMappings.defaultReturnValue(-1);
-        this.legacyBlockStateIdMappings.defaultReturnValue(-1);
+    private final Mappings mappings;
 
-        final List<BedrockBlockState> bedrockBlockStates = new ArrayList<>(BedrockProtocol.MAPPINGS.getBedrockBlockStates());
-        final Map<BlockState, Integer> javaBlockStates = BedrockProtocol.MAPPINGS.getJavaBlockStates();
-        final Map<BlockState, BlockState> bedrockToJavaBlockStates = BedrockProtocol.MAPPINGS.getBedrockToJavaBlockStates();
-        final Map<String, String> blockTags = BedrockProtocol.MAPPINGS.getBedrockBlockTags();
-        final Set<String> bedrockBlockIdentifiers = bedrockBlockStates.stream().map(BedrockBlockState::namespacedIdentifier).collect(Collectors.toSet());
-        final List<BedrockBlockState> customBlockStates = new ArrayList<>();
+    public BlockStateRewriter(final BlockProperties[] blockProperties, final boolean hashedRuntimeBlockIds) {
+        final Mappings vanillaMappings = vanillaMappings(hashedRuntimeBlockIds);
 
         final Map<String, CompoundTag> effectiveBlockProperties = new HashMap<>();
         for (BlockProperties blockProperty : blockProperties) {
             final String identifier = Key.namespaced(blockProperty.name().toLowerCase(Locale.ROOT));
-            if (bedrockBlockIdentifiers.contains(identifier)) {
+            if (vanillaMappings.blockIdentifiers.contains(identifier)) {
                 continue; // Mojang client does not allow overriding vanilla block states
             }
 
@@ -74,6 +74,41 @@ public class BlockStateRewriter implements StorableObject {
             }
         }
 
+        if (effectiveBlockProperties.isEmpty()) {
+            this.mappings = vanillaMappings;
+            return;
+        }
+
+        // Servers send the same custom blocks to every player, so the resulting mappings can be shared between connections
+        final MappingsKey key = new MappingsKey(hashedRuntimeBlockIds, effectiveBlockProperties);
+        Mappings mappings;
+        synchronized (CUSTOM_MAPPINGS) {
+            mappings = CUSTOM_MAPPINGS.get(key);
+        }
+        if (mappings == null) {
+            mappings = Mappings.withCustomBlocks(vanillaMappings, createCustomBlocks(effectiveBlockProperties), hashedRuntimeBlockIds);
+            synchronized (CUSTOM_MAPPINGS) {
+                CUSTOM_MAPPINGS.put(key, mappings);
+            }
+        }
+        this.mappings = mappings;
+    }
+
+    private static Mappings vanillaMappings(final boolean hashedRuntimeBlockIds) {
+        synchronized (VANILLA_MAPPINGS) {
+            final int index = hashedRuntimeBlockIds ? 1 : 0;
+            if (VANILLA_MAPPINGS[index] == null) {
+                final List<BedrockBlockState> bedrockBlockStates = new ArrayList<>(BedrockProtocol.MAPPINGS.getBedrockBlockStates());
+                bedrockBlockStates.sort(BLOCK_STATE_COMPARATOR);
+                VANILLA_MAPPINGS[index] = new Mappings(bedrockBlockStates, Collections.emptyList(), hashedRuntimeBlockIds, new BlockStateSanitizer(bedrockBlockStates));
+            }
+            return VANILLA_MAPPINGS[index];
+        }
+    }
+
+    private static List<CustomBlock> createCustomBlocks(final Map<String, CompoundTag> effectiveBlockProperties) {
+        final List<CustomBlock> customBlocks = new ArrayList<>(effectiveBlockProperties.size());
+
         for (Map.Entry<String, CompoundTag> blockProperty : effectiveBlockProperties.entrySet()) {
             if (!(blockProperty.getValue().get("menu_category") instanceof CompoundTag)) { // Mojang client crashes if this tag is missing
                 throw new IllegalStateException("Missing menu_category tag for " + blockProperty.getKey());
@@ -141,107 +176,375 @@ public class BlockStateRewriter implements StorableObject {
                 }
             }
 
-            final List<CompoundTag> combinations = CombinationUtil.generateCombinations(propertiesMap).stream()
-                    .map(stringTagMap -> {
-                        final CompoundTag combination = new CompoundTag();
-                        for (Map.Entry<String, Tag> entry : stringTagMap.entrySet()) {
-                            combination.put(entry.getKey(), entry.getValue().copy());
-                        }
-                        return combination;
-                    }).collect(Collectors.toList());
-            if (combinations.isEmpty()) {
-                combinations.add(new CompoundTag());
+            customBlocks.add(new CustomBlock(BedrockBlockState.sanitizeName(blockProperty.getKey()), propertiesMap)); // Same identifier as the palette lookups use
+        }
+
+        customBlocks.sort((a, b) -> HashedPaletteComparator.INSTANCE.compare(a.identifier, b.identifier));
+        return customBlocks;
+    }
+
+    public int bedrockId(final CompoundTag bedrockBlockStateTag) {
+        final Integer cachedId = this.mappings.resolvedBlockStateTags.get(bedrockBlockStateTag);
+        if (cachedId != null) {
+            return cachedId;
+        }
+
+        final CompoundTag bedrockBlockStateTagClone = bedrockBlockStateTag.copy();
+        int bedrockId;
+        try {
+            BedrockProtocol.MAPPINGS.getBedrockBlockStateUpgrader().upgradeToLatest(bedrockBlockStateTagClone);
+            this.mappings.blockStateSanitizer.sanitize(bedrockBlockStateTagClone);
+
+            bedrockId = this.bedrockId(BedrockBlockState.fromNbt(bedrockBlockStateTagClone));
+        } catch (Throwable e) {
+            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Error while rewriting block state tag: " + bedrockBlockStateTag, e);
+            bedrockId = this.bedrockId(BedrockBlockState.AIR);
+        }
+
+        if (this.mappings.resolvedBlockStateTags.size() >= MAX_RESOLVED_BLOCK_STATE_TAGS) {
+            this.mappings.resolvedBlockStateTags.clear();
+        }
+        this.mappings.resolvedBlockStateTags.put(bedrockBlockStateTag.copy(), bedrockId);
+        return bedrockId;
+    }
+
+    public int bedrockId(final BlockState bedrockBlockState) {
+        final Integer bedrockId = this.mappings.blockStateMappings.get(bedrockBlockState);
+        if (bedrockId != null) {
+            return bedrockId;
+        }
+        return this.mappings.customBlockStateId(bedrockBlockState);
+    }
+
+    public BlockState blockState(final int bedrockBlockStateId) {
+        final BlockState blockState = this.mappings.blockStateMappings.inverse().get(bedrockBlockStateId);
+        if (blockState != null) {
+            return blockState;
+        }
+        return this.mappings.customBlockState(bedrockBlockStateId);
+    }
+
+    public int bedrockId(final int legacyBlockStateId) {
+        return this.mappings.legacyBlockStateIdMappings.get(legacyBlockStateId);
+    }
+
+    public int javaId(final int bedrockBlockStateId) {
+        final int javaId = this.mappings.blockStateIdMappings.get(bedrockBlockStateId);
+        if (javaId == -1 && this.mappings.isCustomBlockState(bedrockBlockStateId)) {
+            return this.mappings.infoUpdateJavaId;
+        }
+        return javaId;
+    }
+
+    public int waterlog(final int javaBlockStateId) {
+        return BedrockProtocol.MAPPINGS.getJavaWaterloggedBlockStates()[javaBlockStateId];
+    }
+
+    public String tag(final int bedrockBlockStateId) {
+        return this.mappings.blockStateTags.get(bedrockBlockStateId);
+    }
+
+    /**
+     * Immutable block state tables which are shared between all connections using the same custom blocks.<br>
+     * Only the cache of resolved block state tags is modified after construction.
+     */
+    private static class Mappings {
+
+        private final List<BedrockBlockState> blockStates; // Vanilla, sorted by the hashed palette order
+        private final Set<String> blockIdentifiers;
+        private final int infoUpdateJavaId;
+        private final Int2IntMap blockStateIdMappings; // Bedrock -> Java
+        private final Int2IntMap legacyBlockStateIdMappings; // Bedrock -> Bedrock
+        private final BiMap<BlockState, Integer> blockStateMappings; // Bedrock -> Bedrock
+        private final Int2ObjectMap<String> blockStateTags; // Bedrock
+        private final BlockStateSanitizer blockStateSanitizer;
+        private final List<CustomBlock> customBlocks; // Sorted by the hashed palette order
+        private final Object2IntMap<String> customBlockIndices;
+        private final int[] customBlockOffsets; // Non hashed: First bedrock id of each custom block, hashed: First index of each custom block in all custom block states
+        private final Int2IntMap customBlockStateIds; // Bedrock -> Index in all custom block states, only used for hashed runtime ids
+        private final Map<CompoundTag, Integer> resolvedBlockStateTags = new ConcurrentHashMap<>(); // Raw block state tag -> Bedrock
+
+        private Mappings(final List<BedrockBlockState> blockStates, final List<CustomBlock> customBlocks, final boolean hashedRuntimeBlockIds, final BlockStateSanitizer blockStateSanitizer) {
+            final Map<BlockState, Integer> javaBlockStates = BedrockProtocol.MAPPINGS.getJavaBlockStates();
+            final Map<BlockState, BlockState> bedrockToJavaBlockStates = BedrockProtocol.MAPPINGS.getBedrockToJavaBlockStates();
+            final Map<String, String> blockTags = BedrockProtocol.MAPPINGS.getBedrockBlockTags();
+
+            this.blockStates = Collections.unmodifiableList(blockStates);
+            this.blockIdentifiers = blockStates.stream().map(BedrockBlockState::namespacedIdentifier).collect(Collectors.toSet());
+            this.infoUpdateJavaId = javaBlockStates.get(bedrockToJavaBlockStates.get(BedrockBlockState.INFO_UPDATE));
+            this.blockStateIdMappings = new Int2IntOpenHashMap(blockStates.size());
+            this.blockStateIdMappings.defaultReturnValue(-1);
+            this.legacyBlockStateIdMappings = new Int2IntOpenHashMap();
+            this.legacyBlockStateIdMappings.defaultReturnValue(-1);
+            this.blockStateMappings = HashBiMap.create(blockStates.size());
+            this.blockStateTags = new Int2ObjectOpenHashMap<>();
+            this.blockStateSanitizer = blockStateSanitizer;
+            this.customBlocks = customBlocks;
+            this.customBlockIndices = createCustomBlockIndices(customBlocks);
+            this.customBlockOffsets = hashedRuntimeBlockIds ? createCustomBlockOffsets(customBlocks) : new int[customBlocks.size()];
+            this.customBlockStateIds = hashedRuntimeBlockIds ? createCustomBlockStateIds(customBlocks, this.customBlockOffsets) : null;
+
+            int nextId = 0;
+            int customIndex = 0;
+            for (BedrockBlockState bedrockBlockState : blockStates) {
+                // Custom blocks are placed in between the vanilla block states like a stable sort would do it
+                while (!hashedRuntimeBlockIds && customIndex < customBlocks.size() && HashedPaletteComparator.INSTANCE.compare(customBlocks.get(customIndex).identifier, bedrockBlockState.namespacedIdentifier()) < 0) {
+                    this.customBlockOffsets[customIndex] = nextId;
+                    nextId += customBlocks.get(customIndex++).stateCount;
+                }
+                final int bedrockId = hashedRuntimeBlockIds ? bedrockBlockState.blockStateTag().<IntTag>get("network_id").asInt() : nextId++;
+
+                this.blockStateMappings.put(bedrockBlockState, bedrockId);
+
+                if (blockTags.containsKey(bedrockBlockState.namespacedIdentifier())) {
+                    this.blockStateTags.put(bedrockId, blockTags.get(bedrockBlockState.namespacedIdentifier()));
+                }
+
+                if (!bedrockToJavaBlockStates.containsKey(bedrockBlockState)) {
+                    ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing bedrock -> java block state mapping: " + bedrockBlockState.toBlockStateString());
+                    continue;
+                }
+
+                final int javaId = javaBlockStates.get(bedrockToJavaBlockStates.get(bedrockBlockState));
+                this.blockStateIdMappings.put(bedrockId, javaId);
+            }
+            while (!hashedRuntimeBlockIds && customIndex < customBlocks.size()) {
+                this.customBlockOffsets[customIndex] = nextId;
+                nextId += customBlocks.get(customIndex++).stateCount;
             }
 
-            for (CompoundTag combination : combinations) {
-                final CompoundTag blockStateTag = new CompoundTag();
-                blockStateTag.put("name", new StringTag(blockProperty.getKey()));
-                blockStateTag.put("states", combination);
-                blockStateTag.put("network_id", new IntTag(BlockStateHasher.hash(blockStateTag)));
+            for (Int2ObjectMap.Entry<BedrockBlockState> entry : BedrockProtocol.MAPPINGS.getBedrockLegacyBlockStates().int2ObjectEntrySet()) {
+                final int legacyId = entry.getIntKey() >> 6;
+                final int legacyData = entry.getIntKey() & 63;
+                if (legacyData > 15) continue; // Dirty hack Mojang did in 1.12. Can be ignored safely as those values can't be used in chunk packets.
 
-                customBlockStates.add(BedrockBlockState.fromNbt(blockStateTag));
+                this.legacyBlockStateIdMappings.put(legacyId << 4 | legacyData & 15, this.blockStateMappings.getOrDefault(entry.getValue(), -1).intValue());
             }
         }
 
-        bedrockBlockStates.addAll(customBlockStates);
-        bedrockBlockStates.sort((a, b) -> HashedPaletteComparator.INSTANCE.compare(a.namespacedIdentifier(), b.namespacedIdentifier()));
+        private Mappings(final Mappings vanillaMappings, final List<CustomBlock> customBlocks, final BlockStateSanitizer blockStateSanitizer) {
+            // Hashed vanilla ids don't depend on the custom blocks, so the vanilla tables can be shared
+            this.blockStates = vanillaMappings.blockStates;
+            this.blockIdentifiers = vanillaMappings.blockIdentifiers;
+            this.infoUpdateJavaId = vanillaMappings.infoUpdateJavaId;
+            this.blockStateIdMappings = vanillaMappings.blockStateIdMappings;
+            this.legacyBlockStateIdMappings = vanillaMappings.legacyBlockStateIdMappings; // Legacy block states are always vanilla block states
+            this.blockStateMappings = vanillaMappings.blockStateMappings;
+            this.blockStateTags = vanillaMappings.blockStateTags; // Custom blocks never have a tag
+            this.blockStateSanitizer = blockStateSanitizer;
+            this.customBlocks = customBlocks;
+            this.customBlockIndices = createCustomBlockIndices(customBlocks);
+            this.customBlockOffsets = createCustomBlockOffsets(customBlocks);
+            this.customBlockStateIds = createCustomBlockStateIds(customBlocks, this.customBlockOffsets);
+        }
 
-        for (int i = 0; i < bedrockBlockStates.size(); i++) {
-            final BedrockBlockState bedrockBlockState = bedrockBlockStates.get(i);
-            final int bedrockId = hashedRuntimeBlockIds ? bedrockBlockState.blockStateTag().<IntTag>get("network_id").asInt() : i;
+        private static Mappings withCustomBlocks(final Mappings vanillaMappings, final List<CustomBlock> customBlocks, final boolean hashedRuntimeBlockIds) {
+            final Map<String, Map<String, Set<Object>>> customPropertyValues = new HashMap<>(customBlocks.size());
+            for (CustomBlock customBlock : customBlocks) {
+                customPropertyValues.put(customBlock.identifier, customBlock.propertyValues());
+            }
+            final BlockStateSanitizer blockStateSanitizer = new BlockStateSanitizer(vanillaMappings.blockStateSanitizer, customPropertyValues);
 
-            this.blockStateMappings.put(bedrockBlockState, bedrockId);
+            if (hashedRuntimeBlockIds) {
+                return new Mappings(vanillaMappings, customBlocks, blockStateSanitizer);
+            } else { // Custom blocks shift the palette indices of the vanilla block states
+                return new Mappings(vanillaMappings.blockStates, customBlocks, false, blockStateSanitizer);
+            }
+        }
 
-            if (blockTags.containsKey(bedrockBlockState.namespacedIdentifier())) {
-                this.blockStateTags.put(bedrockId, blockTags.get(bedrockBlockState.namespacedIdentifier()));
+        private static Object2IntMap<String> createCustomBlockIndices(final List<CustomBlock> customBlocks) {
+            final Object2IntMap<String> customBlockIndices = new Object2IntOpenHashMap<>(customBlocks.size());
+            customBlockIndices.defaultReturnValue(-1);
+            for (int i = 0; i < customBlocks.size(); i++) {
+                customBlockIndices.put(customBlocks.get(i).identifier, i);
             }
+            return customBlockIndices;
+        }
 
-            if (!bedrockToJavaBlockStates.containsKey(bedrockBlockState)) {
-                ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing bedrock -> java block state mapping: " + bedrockBlockState.toBlockStateString());
-                continue;
+        private static int[] createCustomBlockOffsets(final List<CustomBlock> customBlocks) {
+            final int[] customBlockOffsets = new int[customBlocks.size()];
+            int offset = 0;
+            for (int i = 0; i < customBlocks.size(); i++) {
+                customBlockOffsets[i] = offset;
+                offset = Math.addExact(offset, customBlocks.get(i).stateCount);
             }
+            return customBlockOffsets;
+        }
 
-            final int javaId = javaBlockStates.get(bedrockToJavaBlockStates.get(bedrockBlockState));
-            this.blockStateIdMappings.put(bedrockId, javaId);
+        private static Int2IntMap createCustomBlockStateIds(final List<CustomBlock> customBlocks, final int[] customBlockOffsets) {
+            final Int2IntMap customBlockStateIds = new Int2IntOpenHashMap();
+            customBlockStateIds.defaultReturnValue(-1);
+            for (int i = 0; i < customBlocks.size(); i++) {
+                final CustomBlock customBlock = customBlocks.get(i);
+                final IntStream ordinals = customBlock.stateCount >= PARALLEL_HASHING_THRESHOLD ? IntStream.range(0, customBlock.stateCount).parallel() : IntStream.range(0, customBlock.stateCount);
+                final int[] hashes = ordinals.map(customBlock::hash).toArray();
+                for (int ordinal = 0; ordinal < hashes.length; ordinal++) {
+                    customBlockStateIds.put(hashes[ordinal], customBlockOffsets[i] + ordinal);
+                }
+            }
+            return customBlockStateIds;
         }
 
-        for (BedrockBlockState customBlockState : customBlockStates) {
-            final int bedrockId = this.blockStateMappings.get(customBlockState);
-            final int javaId = javaBlockStates.get(bedrockToJavaBlockStates.get(BedrockBlockState.INFO_UPDATE));
-            this.blockStateIdMappings.put(bedrockId, javaId);
+        private boolean isCustomBlockState(final int bedrockId) {
+            return this.customBlockIndex(bedrockId) != -1;
         }
 
-        for (Int2ObjectMap.Entry<BedrockBlockState> entry : BedrockProtocol.MAPPINGS.getBedrockLegacyBlockStates().int2ObjectEntrySet()) {
-            final int legacyId = entry.getIntKey() >> 6;
-            final int legacyData = entry.getIntKey() & 63;
-            if (legacyData > 15) continue; // Dirty hack Mojang did in 1.12. Can be ignored safely as those values can't be used in chunk packets.
+        private int customBlockStateId(final BlockState blockState) {
+            final int index = this.customBlockIndices.getInt(blockState.namespacedIdentifier());
+            if (index == -1) return -1;
+
+            final CustomBlock customBlock = this.customBlocks.get(index);
+            final int ordinal = customBlock.ordinal(blockState);
+            if (ordinal == -1) return -1;
 
-            this.legacyBlockStateIdMappings.put(legacyId << 4 | legacyData & 15, this.blockStateMappings.getOrDefault(entry.getValue(), -1).intValue());
+            return this.customBlockStateIds != null ? customBlock.hash(ordinal) : this.customBlockOffsets[index] + ordinal;
         }
 
-        this.blockStateSanitizer = new BlockStateSanitizer(bedrockBlockStates);
-    }
+        private BlockState customBlockState(final int bedrockId) {
+            final int index = this.customBlockIndex(bedrockId);
+            if (index == -1) return null;
 
-    public int bedrockId(final CompoundTag bedrockBlockStateTag) {
-        final CompoundTag bedrockBlockStateTagClone = bedrockBlockStateTag.copy();
-        try {
-            BedrockProtocol.MAPPINGS.getBedrockBlockStateUpgrader().upgradeToLatest(bedrockBlockStateTagClone);
-            this.blockStateSanitizer.sanitize(bedrockBlockStateTagClone);
+            return this.customBlocks.get(index).blockState(this.customBlockOffset(bedrockId) - this.customBlockOffsets[index]);
+        }
 
-            return this.bedrockId(BedrockBlockState.fromNbt(bedrockBlockStateTagClone));
-        } catch (Throwable e) {
-            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Error while rewriting block state tag: " + bedrockBlockStateTag, e);
-            return this.bedrockId(BedrockBlockState.AIR);
+        private int customBlockIndex(final int bedrockId) {
+            if (this.customBlocks.isEmpty()) return -1;
+            final int offset = this.customBlockOffset(bedrockId);
+            if (offset == -1) return -1;
+
+            int index = Arrays.binarySearch(this.customBlockOffsets, offset);
+            if (index < 0) {
+                index = -index - 2; // The custom block starting before the offset
+            }
+            if (index < 0 || offset - this.customBlockOffsets[index] >= this.customBlocks.get(index).stateCount) {
+                return -1;
+            }
+            return index;
         }
-    }
 
-    public int bedrockId(final BlockState bedrockBlockState) {
-        return this.blockStateMappings.getOrDefault(bedrockBlockState, -1);
-    }
+        private int customBlockOffset(final int bedrockId) {
+            return this.customBlockStateIds != null ? this.customBlockStateIds.get(bedrockId) : bedrockId;
+        }
 
-    public BlockState blockState(final int bedrockBlockStateId) {
-        return this.blockStateMappings.inverse().get(bedrockBlockStateId);
     }
 
-    public int bedrockId(final int legacyBlockStateId) {
-        return this.legacyBlockStateIdMappings.get(legacyBlockStateId);
-    }
+    /**
+     * A custom block with all of its possible block states.<br>
+     * The block states are not created upfront, but derived from their ordinal in the combination order when needed.
+     */
+    private static class CustomBlock {
+
+        private final String identifier;
+        private final String[] propertyNames;
+        private final Tag[][] propertyValues;
+        private final int[] strides;
+        private final int stateCount;
+
+        private CustomBlock(final String identifier, Map<String, Set<Tag>> properties) {
+            if (properties.values().stream().anyMatch(Set::isEmpty)) { // No combinations, so the block only has a single block state without properties
+                properties = Collections.emptyMap();
+            }
 
-    public int javaId(final int bedrockBlockStateId) {
-        return this.blockStateIdMappings.get(bedrockBlockStateId);
-    }
+            this.identifier = identifier;
+            this.propertyNames = properties.keySet().toArray(new String[0]);
+            this.propertyValues = new Tag[this.propertyNames.length][];
+            this.strides = new int[this.propertyNames.length];
+            int stateCount = 1;
+            for (int i = this.propertyNames.length - 1; i >= 0; i--) { // The first property changes the slowest
+                this.propertyValues[i] = properties.get(this.propertyNames[i]).toArray(new Tag[0]);
+                this.strides[i] = stateCount;
+                try {
+                    stateCount = Math.multiplyExact(stateCount, this.propertyValues[i].length);
+                } catch (ArithmeticException e) {
+                    throw new IllegalStateException("Too many block states for custom block " + identifier);
+                }
+            }
+            this.stateCount = stateCount;
+        }
 
-    public int waterlog(final int javaBlockStateId) {
-        if (BedrockProtocol.MAPPINGS.getJavaPreWaterloggedBlockStates().contains(javaBlockStateId)) {
-            return javaBlockStateId;
+        private int ordinal(final BlockState blockState) {
+            final Map<String, String> properties = blockState.properties();
+            if (properties.size() != this.propertyNames.length) return -1;
+
+            int ordinal = 0;
+            for (int i = 0; i < this.propertyNames.length; i++) {
+                final String value = properties.get(this.propertyNames[i]);
+                if (value == null) return -1;
+
+                int valueIndex = -1;
+                for (int j = 0; j < this.propertyValues[i].length; j++) {
+                    if (value.equals(this.propertyValues[i][j].getValue().toString())) {
+                        valueIndex = j;
+                        break;
+                    }
+                }
+                if (valueIndex == -1) return -1;
+
+                ordinal += valueIndex * this.strides[i];
+            }
+            return ordinal;
+        }
+
+        private BedrockBlockState blockState(final int ordinal) {
+            final CompoundTag blockStateTag = this.blockStateTag(ordinal, true);
+            blockStateTag.put("network_id", new IntTag(BlockStateHasher.hash(blockStateTag)));
+            return BedrockBlockState.fromNbt(blockStateTag);
+        }
+
+        private int hash(final int ordinal) {
+            return BlockStateHasher.hash(this.blockStateTag(ordinal, false));
+        }
+
+        private CompoundTag blockStateTag(final int ordinal, final boolean copyValues) {
+            final CompoundTag statesTag = new CompoundTag();
+            for (int i = 0; i < this.propertyNames.length; i++) {
+                final Tag value = this.propertyValues[i][ordinal / this.strides[i] % this.propertyValues[i].length];
+                statesTag.put(this.propertyNames[i], copyValues ? value.copy() : value);
+            }
+
+            final CompoundTag blockStateTag = new CompoundTag();
+            blockStateTag.put("name", new StringTag(this.identifier));
+            blockStateTag.put("states", statesTag);
+            return blockStateTag;
+        }
+
+        private Map<String, Set<Object>> propertyValues() {
+            final Map<String, Set<Object>> propertyValues = new HashMap<>(this.propertyNames.length);
+            for (int i = 0; i < this.propertyNames.length; i++) {
+                final Set<Object> values = new LinkedHashSet<>(this.propertyValues[i].length);
+                for (Tag value : this.propertyValues[i]) {
+                    values.add(value.getValue());
+                }
+                propertyValues.put(this.propertyNames[i], values);
+            }
+            return propertyValues;
         }
 
-        final BlockState waterlogged = BedrockProtocol.MAPPINGS.getJavaBlockStates().inverse().get(javaBlockStateId).withProperty("waterlogged", "true");
-        return BedrockProtocol.MAPPINGS.getJavaBlockStates().getOrDefault(waterlogged, -1);
     }
 
-    public String tag(final int bedrockBlockStateId) {
-        return this.blockStateTags.get(bedrockBlockStateId);
+    private static class MappingsKey {
+
+        private final boolean hashedRuntimeBlockIds;
+        private final Map<String, CompoundTag> blockProperties;
+
+        private MappingsKey(final boolean hashedRuntimeBlockIds, final Map<String, CompoundTag> blockProperties) {
+            this.hashedRuntimeBlockIds = hashedRuntimeBlockIds;
+            this.blockProperties = blockProperties;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            MappingsKey that = (MappingsKey) o;
+            return hashedRuntimeBlockIds == that.hashedRuntimeBlockIds && Objects.equals(blockProperties, that.blockProperties);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(hashedRuntimeBlockIds, blockProperties);
+        }
+
     }
 
 }
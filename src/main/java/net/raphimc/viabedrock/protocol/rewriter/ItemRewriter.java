@@ -24,6 +24,8 @@ import com.viaversion.viaversion.api.connection.UserConnection;
 import com.viaversion.viaversion.api.minecraft.item.DataItem;
 import com.viaversion.viaversion.api.minecraft.item.Item;
 import com.viaversion.viaversion.api.type.Type;
+import com.viaversion.viaversion.libs.fastutil.ints.Int2ObjectMap;
+import com.viaversion.viaversion.libs.fastutil.ints.Int2ObjectOpenHashMap;
 import com.viaversion.viaversion.libs.gson.JsonObject;
 import com.viaversion.viaversion.libs.mcstructs.text.ATextComponent;
 import com.viaversion.viaversion.libs.opennbt.stringified.SNBT;
@@ -49,7 +51,8 @@ public class ItemRewriter extends StoredObject {
 
     private static final Map<String, RewriterCreator> ITEM_REWRITERS = new HashMap<>();
 
-    private final BiMap<String, Integer> items;
+    private final int minItemId;
+    private final ItemMapping[] itemMappings; // Indexed by runtime item id - minItemId
     private final Type<BedrockItem> itemType;
     private final Type<BedrockItem[]> itemArrayType;
 
@@ -61,7 +64,7 @@ public class ItemRewriter extends StoredObject {
     public ItemRewriter(final UserConnection user, final ItemEntry[] itemEntries) {
         super(user);
 
-        this.items = HashBiMap.create(BedrockProtocol.MAPPINGS.getBedrockItems());
+        final BiMap<String, Integer> items = HashBiMap.create(BedrockProtocol.MAPPINGS.getBedrockItems());
         for (ItemEntry itemEntry : itemEntries) {
             String namespace = "minecraft";
             String identifier = itemEntry.identifier();
@@ -73,60 +76,43 @@ public class ItemRewriter extends StoredObject {
                 identifier = identifier.toLowerCase(Locale.ROOT);
             }
 
-            this.items.inverse().remove(itemEntry.id());
-            this.items.put(namespace + ":" + identifier, itemEntry.id());
+            items.inverse().remove(itemEntry.id());
+            items.put(namespace + ":" + identifier, itemEntry.id());
         }
-        this.itemType = new BedrockItemType(this.items.getOrDefault("minecraft:shield", -1));
+
+        int minItemId = 0;
+        int maxItemId = -1;
+        for (int id : items.values()) {
+            minItemId = Math.min(minItemId, id);
+            maxItemId = Math.max(maxItemId, id);
+        }
+        this.minItemId = minItemId;
+        this.itemMappings = new ItemMapping[maxItemId - minItemId + 1];
+        for (Map.Entry<String, Integer> entry : items.entrySet()) {
+            this.itemMappings[entry.getValue() - minItemId] = new ItemMapping(entry.getKey());
+        }
+
+        this.itemType = new BedrockItemType(items.getOrDefault("minecraft:shield", -1));
         this.itemArrayType = new ArrayType<>(this.itemType, BedrockTypes.UNSIGNED_VAR_INT);
     }
 
     public Item javaItem(final BedrockItem bedrockItem) {
         if (bedrockItem == null) return null;
 
-        String identifier = this.items.inverse().get(bedrockItem.identifier());
-        if (identifier == null) {
+        final ItemMapping itemMapping = this.itemMapping(bedrockItem.identifier());
+        if (itemMapping == null) {
             ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing item identifier for id: " + bedrockItem.identifier());
             return null;
         }
 
-        final Rewriter rewriter;
-        final Map<BlockState, Rewriter> blockItemRewriter = BedrockProtocol.MAPPINGS.getBedrockToJavaBlockItems().get(identifier);
-        if (blockItemRewriter != null) {
-            BlockState blockState = this.getUser().get(BlockStateRewriter.class).blockState(bedrockItem.blockRuntimeId());
-            if (!blockItemRewriter.containsKey(blockState)) {
-                ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing block state: " + bedrockItem.blockRuntimeId() + " for item: " + identifier);
-                blockState = blockItemRewriter.keySet().iterator().next();
-            }
-            rewriter = blockItemRewriter.get(blockState);
-        } else {
-            final int meta = bedrockItem.data() & 0xFFFF;
-            final String newIdentifier = BedrockProtocol.MAPPINGS.getBedrockItemUpgrader().upgradeMetaItem(identifier, meta);
-            if (newIdentifier != null) {
-                identifier = newIdentifier;
-            }
-            final Map<Integer, Rewriter> metaItemRewriter = BedrockProtocol.MAPPINGS.getBedrockToJavaMetaItems().get(identifier);
-            if (metaItemRewriter != null) {
-                if (!metaItemRewriter.containsKey(meta)) {
-                    if (metaItemRewriter.size() != 1 || meta != 0) {
-                        ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing meta: " + meta + " for item: " + identifier);
-                    }
-                    rewriter = metaItemRewriter.get(null);
-                } else {
-                    rewriter = metaItemRewriter.get(meta);
-                }
-            } else {
-                ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing bedrock -> java item mapping for " + identifier);
-
-                final ATextComponent nameComponent = TextUtil.stringToComponent("§cMissing item: " + identifier);
-                nameComponent.getStyle().setItalic(false);
-
-                final CompoundTag tag = new CompoundTag();
-                final CompoundTag displayTag = new CompoundTag();
-                displayTag.put("Name", new StringTag(TextUtil.componentToJson(nameComponent)));
-                tag.put("display", displayTag);
-
-                return new DataItem(BedrockProtocol.MAPPINGS.getJavaItems().get("minecraft:paper"), (byte) MathUtil.clamp(bedrockItem.amount(), 0, 127), (short) 0, tag);
+        final int key = itemMapping.blockItemRewriter != null ? bedrockItem.blockRuntimeId() : bedrockItem.data() & 0xFFFF;
+        Rewriter rewriter = itemMapping.rewriters != null ? itemMapping.rewriters.get(key) : null;
+        if (rewriter == null) {
+            rewriter = this.resolveRewriter(itemMapping, bedrockItem);
+            if (itemMapping.rewriters == null) {
+                itemMapping.rewriters = new Int2ObjectOpenHashMap<>();
             }
+            itemMapping.rewriters.put(key, rewriter);
         }
 
         return rewriter.toJava(this.getUser(), bedrockItem);
@@ -156,8 +142,9 @@ public class ItemRewriter extends StoredObject {
         return bedrockItems;
     }
 
-    public BiMap<String, Integer> getItems() {
-        return this.items;
+    public String identifier(final int bedrockItemId) {
+        final ItemMapping itemMapping = this.itemMapping(bedrockItemId);
+        return itemMapping != null ? itemMapping.identifier : null;
     }
 
     public Type<BedrockItem> itemType() {
@@ -168,29 +155,79 @@ public class ItemRewriter extends StoredObject {
         return this.itemArrayType;
     }
 
+    private ItemMapping itemMapping(final int bedrockItemId) {
+        final int index = bedrockItemId - this.minItemId;
+        if (index < 0 || index >= this.itemMappings.length) return null;
+
+        return this.itemMappings[index];
+    }
+
+    private Rewriter resolveRewriter(final ItemMapping itemMapping, final BedrockItem bedrockItem) {
+        String identifier = itemMapping.identifier;
+        if (itemMapping.blockItemRewriter != null) {
+            BlockState blockState = this.getUser().get(BlockStateRewriter.class).blockState(bedrockItem.blockRuntimeId());
+            if (!itemMapping.blockItemRewriter.containsKey(blockState)) {
+                ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing block state: " + bedrockItem.blockRuntimeId() + " for item: " + identifier);
+                blockState = itemMapping.blockItemRewriter.keySet().iterator().next();
+            }
+            return itemMapping.blockItemRewriter.get(blockState);
+        }
+
+        final int meta = bedrockItem.data() & 0xFFFF;
+        final String newIdentifier = BedrockProtocol.MAPPINGS.getBedrockItemUpgrader().upgradeMetaItem(identifier, meta);
+        if (newIdentifier != null) {
+            identifier = newIdentifier;
+        }
+        final Map<Integer, Rewriter> metaItemRewriter = BedrockProtocol.MAPPINGS.getBedrockToJavaMetaItems().get(identifier);
+        if (metaItemRewriter == null) {
+            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing bedrock -> java item mapping for " + identifier);
+            return new MissingItemRewriter(identifier);
+        }
+        if (!metaItemRewriter.containsKey(meta)) {
+            if (metaItemRewriter.size() != 1 || meta != 0) {
+                ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing meta: " + meta + " for item: " + identifier);
+            }
+            return metaItemRewriter.get(null);
+        }
+        return metaItemRewriter.get(meta);
+    }
+
     public static class Rewriter {
 
         private final String identifier;
-        private final String displayName;
-        private final CompoundTag overrideTag;
+        private final int javaId;
+        private final CompoundTag javaTag; // Template which is copied for every translated item
 
         private Rewriter(final String identifier, final String displayName, final CompoundTag overrideTag) {
             this.identifier = identifier;
-            this.displayName = displayName;
-            this.overrideTag = overrideTag;
+            this.javaId = BedrockProtocol.MAPPINGS.getJavaItems().get(identifier);
+
+            final CompoundTag javaTag = new CompoundTag();
+            if (overrideTag != null) {
+                javaTag.setValue(overrideTag.copy().getValue());
+            }
+            if (displayName != null) {
+                javaTag.put("display", createDisplayTag("Bedrock " + displayName));
+            }
+            this.javaTag = javaTag.isEmpty() ? null : javaTag;
         }
 
         public static Rewriter fromJson(final String bedrockIdentifier, final JsonObject javaMapping) {
             final String javaIdentifier = javaMapping.get("java_id").getAsString();
+            final String javaDisplayName = javaMapping.has("java_display_name") ? javaMapping.get("java_display_name").getAsString() : null;
+            final String javaTag = javaMapping.has("java_tag") ? javaMapping.get("java_tag").getAsString() : null;
+            return fromMapping(bedrockIdentifier, javaIdentifier, javaDisplayName, javaTag);
+        }
+
+        public static Rewriter fromMapping(final String bedrockIdentifier, final String javaIdentifier, final String javaDisplayName, final String javaSnbtTag) {
             if (!BedrockProtocol.MAPPINGS.getJavaItems().containsKey(javaIdentifier)) {
                 throw new RuntimeException("Unknown java item: " + javaIdentifier);
             }
 
-            final String javaDisplayName = javaMapping.has("java_display_name") ? javaMapping.get("java_display_name").getAsString() : null;
             CompoundTag javaTag = null;
             try {
-                if (javaMapping.has("java_tag")) {
-                    javaTag = SNBT.deserializeCompoundTag(javaMapping.get("java_tag").getAsString());
+                if (javaSnbtTag != null) {
+                    javaTag = SNBT.deserializeCompoundTag(javaSnbtTag);
                 }
             } catch (Throwable e) {
                 throw new RuntimeException("Failed to parse java tag for " + javaIdentifier, e);
@@ -200,24 +237,17 @@ public class ItemRewriter extends StoredObject {
             return ITEM_REWRITERS.get(tag).create(javaIdentifier, javaDisplayName, javaTag);
         }
 
-        public Item toJava(final UserConnection user, final BedrockItem bedrockItem) {
-            final int javaId = BedrockProtocol.MAPPINGS.getJavaItems().get(this.identifier);
+        protected static CompoundTag createDisplayTag(final String name) {
+            final ATextComponent nameComponent = TextUtil.stringToComponent(name);
+            nameComponent.getStyle().setItalic(false);
 
-            final CompoundTag javaTag = new CompoundTag();
-            if (this.overrideTag != null) {
-                javaTag.setValue(this.overrideTag.copy().getValue());
-            }
-            if (this.displayName != null) {
-                final String newName = "Bedrock " + this.displayName;
-                final ATextComponent nameComponent = TextUtil.stringToComponent(newName);
-                nameComponent.getStyle().setItalic(false);
-
-                final CompoundTag displayTag = new CompoundTag();
-                displayTag.put("Name", new StringTag(TextUtil.componentToJson(nameComponent)));
-                javaTag.put("display", displayTag);
-            }
+            final CompoundTag displayTag = new CompoundTag();
+            displayTag.put("Name", new StringTag(TextUtil.componentToJson(nameComponent)));
+            return displayTag;
+        }
 
-            return new DataItem(javaId, (byte) MathUtil.clamp(bedrockItem.amount(), 0, 127), (short) 0, javaTag.isEmpty() ? null : javaTag);
+        public Item toJava(final UserConnection user, final BedrockItem bedrockItem) {
+            return new DataItem(this.javaId, (byte) MathUtil.clamp(bedrockItem.amount(), 0, 127), (short) 0, this.javaTag != null ? this.javaTag.copy() : null);
         }
 
         public String identifier() {
@@ -226,6 +256,33 @@ public class ItemRewriter extends StoredObject {
 
     }
 
+    private static class MissingItemRewriter extends Rewriter {
+
+        private MissingItemRewriter(final String bedrockIdentifier) {
+            super("minecraft:paper", null, createMissingItemTag(bedrockIdentifier));
+        }
+
+        private static CompoundTag createMissingItemTag(final String bedrockIdentifier) {
+            final CompoundTag tag = new CompoundTag();
+            tag.put("display", createDisplayTag("§cMissing item: " + bedrockIdentifier));
+            return tag;
+        }
+
+    }
+
+    private static class ItemMapping {
+
+        private final String identifier;
+        private final Map<BlockState, Rewriter> blockItemRewriter;
+        private Int2ObjectMap<Rewriter> rewriters; // Block runtime id or meta -> Rewriter, filled on first use
+
+        private ItemMapping(final String identifier) {
+            this.identifier = identifier;
+            this.blockItemRewriter = BedrockProtocol.MAPPINGS.getBedrockToJavaBlockItems().get(identifier);
+        }
+
+    }
+
     private interface RewriterCreator {
 
         Rewriter create(final String identifier, final String displayName, final CompoundTag overrideTag);
@@ -24,21 +24,45 @@ import net.raphimc.viabedrock.api.model.ResourcePack;
 import net.raphimc.viabedrock.protocol.data.ProtocolConstants;
 import net.raphimc.viabedrock.protocol.storage.ResourcePacksStorage;
 
+import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.util.Locale;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.stream.Collectors;
 
 public class ResourcePackRewriter {
 
+    private static final List<Stage<?>> STAGES = Collections.singletonList(new GlyphSheetStage());
+
     // TODO: 1.20.2 added overlay packs. Maybe that's useful?
     // TODO: 1.20.3 added the ability to load multiple separate packs
     public static ResourcePack.Content bedrockToJava(final ResourcePacksStorage resourcePacksStorage) {
-        final ResourcePack.Content javaContent = new ResourcePack.Content();
+        return bedrockToJava(resourcePacksStorage, new LinkedHashMap<>());
+    }
 
+    /**
+     * Converts the bedrock resource packs into a java resource pack.
+     *
+     * @param resourcePacksStorage The resource packs storage
+     * @param stageTimings         The map to which the time in milliseconds each conversion stage took is added
+     * @return The java resource pack content
+     */
+    public static ResourcePack.Content bedrockToJava(final ResourcePacksStorage resourcePacksStorage, final Map<String, Long> stageTimings) {
+        final List<ResourcePack.Content> bedrockContents = new ArrayList<>();
         resourcePacksStorage.iterateResourcePacksBottomToTop(pack -> {
-            convertGlyphSheets(pack.content(), javaContent);
+            bedrockContents.add(pack.content());
             return true;
         });
 
+        final ResourcePack.Content javaContent = new ResourcePack.Content();
+        for (Stage<?> stage : STAGES) {
+            final long start = System.currentTimeMillis();
+            stage.run(bedrockContents, javaContent);
+            stageTimings.put(stage.name, System.currentTimeMillis() - start);
+        }
+
         javaContent.putJson("pack.mcmeta", createPackManifest());
 
         return javaContent;
@@ -53,65 +77,176 @@ public class ResourcePackRewriter {
         return root;
     }
 
-    // TODO: Maybe the new Unihex provider is better
-    private static void convertGlyphSheets(final ResourcePack.Content bedrockContent, final ResourcePack.Content javaContent) {
-        final int glyphsPerRow = 16;
-        final int glyphsPerColumn = 16;
-
-        final String javaDefaultsPath = "assets/minecraft/font/default.json";
-        final JsonObject root;
-        JsonArray providers;
-        if (javaContent.containsKey(javaDefaultsPath)) {
-            root = javaContent.getJson(javaDefaultsPath);
-            providers = root.getAsJsonArray("providers");
-        } else {
-            root = new JsonObject();
-            providers = new JsonArray();
-            root.add("providers", providers);
+    private static byte[] encodePng(final BufferedImage image) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", baos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        return baos.toByteArray();
+    }
+
+    /**
+     * A conversion stage whose files are independent of each other.<br>
+     * The files are converted in parallel on the fork join pool. The results are merged into the java pack on the calling thread in the order in which the files were collected, so the output doesn't depend on the scheduling.
+     *
+     * @param <T> The type describing a file to convert
+     */
+    private static abstract class Stage<T> {
+
+        private final String name;
+
+        private Stage(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param bedrockContents The contents of the bedrock packs from bottom to top
+         * @return The files to convert in merge order
+         */
+        protected abstract List<T> collect(final List<ResourcePack.Content> bedrockContents);
 
-        for (int i = 0; i < 0xFF; i++) {
-            final String pageName = "glyph_" + String.format("%1$02X", i) + ".png";
-            final String bedrockPath = "font/" + pageName;
-            if (!bedrockContent.containsKey(bedrockPath)) {
-                continue;
+        /**
+         * Converts a single file. This is called concurrently and must not modify shared state.
+         */
+        protected abstract ConvertedFile convert(final T file);
+
+        protected abstract void merge(final List<ConvertedFile> convertedFiles, final ResourcePack.Content javaContent);
+
+        private void run(final List<ResourcePack.Content> bedrockContents, final ResourcePack.Content javaContent) {
+            final List<T> files = this.collect(bedrockContents);
+            if (files.isEmpty()) {
+                return;
             }
 
-            final String javaPath = "assets/viabedrock/textures/font/" + pageName.toLowerCase(Locale.ROOT);
-            final BufferedImage image = bedrockContent.getImage(bedrockPath);
-            javaContent.putImage(javaPath, image);
+            this.merge(files.parallelStream().map(this::convert).collect(Collectors.toList()), javaContent);
+        }
+
+    }
 
-            final int glyphHeight = image.getHeight() / glyphsPerColumn;
+    private static class ConvertedFile {
 
-            for (JsonElement provider : providers) {
-                if (provider.getAsJsonObject().get("file").getAsString().equals("viabedrock:font/" + pageName.toLowerCase(Locale.ROOT))) {
-                    providers.remove(provider);
-                    break;
+        private final String path;
+        private final byte[] data;
+        private final JsonObject json;
+
+        private ConvertedFile(final String path, final byte[] data, final JsonObject json) {
+            this.path = path;
+            this.data = data;
+            this.json = json;
+        }
+
+    }
+
+    // TODO: Maybe the new Unihex provider is better
+    private static class GlyphSheetStage extends Stage<GlyphSheetStage.GlyphPage> {
+
+        private static final int GLYPHS_PER_ROW = 16;
+        private static final int GLYPHS_PER_COLUMN = 16;
+        private static final String JAVA_DEFAULTS_PATH = "assets/minecraft/font/default.json";
+
+        private GlyphSheetStage() {
+            super("glyph sheets");
+        }
+
+        @Override
+        protected List<GlyphPage> collect(final List<ResourcePack.Content> bedrockContents) {
+            // Only the topmost pack providing a page is converted. The pages are ordered like the providers would be if every pack overwrote the pages of the packs below it.
+            final GlyphPage[] pages = new GlyphPage[0xFF];
+            for (int packIndex = 0; packIndex < bedrockContents.size(); packIndex++) {
+                final ResourcePack.Content bedrockContent = bedrockContents.get(packIndex);
+                for (int i = 0; i < pages.length; i++) {
+                    final String pageName = "glyph_" + String.format("%1$02X", i) + ".png";
+                    if (bedrockContent.containsKey("font/" + pageName)) {
+                        pages[i] = new GlyphPage(bedrockContent, packIndex, i, pageName);
+                    }
                 }
             }
 
+            final List<GlyphPage> glyphPages = new ArrayList<>();
+            for (GlyphPage page : pages) {
+                if (page != null) {
+                    glyphPages.add(page);
+                }
+            }
+            glyphPages.sort(Comparator.comparingInt((GlyphPage page) -> page.packIndex).thenComparingInt(page -> page.index));
+            return glyphPages;
+        }
+
+        @Override
+        protected ConvertedFile convert(final GlyphPage page) {
+            final String javaName = page.name.toLowerCase(Locale.ROOT);
+            final BufferedImage image = page.content.getImage("font/" + page.name);
+            final int glyphHeight = image.getHeight() / GLYPHS_PER_COLUMN;
+
             final JsonObject glyphPage = new JsonObject();
-            providers.add(glyphPage);
             glyphPage.addProperty("type", "bitmap");
-            glyphPage.addProperty("file", "viabedrock:font/" + pageName.toLowerCase(Locale.ROOT));
+            glyphPage.addProperty("file", "viabedrock:font/" + javaName);
             glyphPage.addProperty("ascent", glyphHeight / 2 + 5);
             glyphPage.addProperty("height", glyphHeight);
             final JsonArray chars = new JsonArray();
             glyphPage.add("chars", chars);
-            for (int c = 0; c < glyphsPerColumn; c++) {
+            for (int c = 0; c < GLYPHS_PER_COLUMN; c++) {
                 final StringBuilder row = new StringBuilder();
-                for (int r = 0; r < glyphsPerRow; r++) {
-                    final int idx = c * glyphsPerColumn + r;
-                    row.append((char) (i << 8 | idx));
+                for (int r = 0; r < GLYPHS_PER_ROW; r++) {
+                    final int idx = c * GLYPHS_PER_COLUMN + r;
+                    row.append((char) (page.index << 8 | idx));
                 }
                 chars.add(row.toString());
             }
+
+            return new ConvertedFile("assets/viabedrock/textures/font/" + javaName, encodePng(image), glyphPage);
         }
-        if (providers.isEmpty()) {
-            return;
+
+        @Override
+        protected void merge(final List<ConvertedFile> convertedFiles, final ResourcePack.Content javaContent) {
+            final JsonObject root;
+            final JsonArray providers;
+            if (javaContent.containsKey(JAVA_DEFAULTS_PATH)) {
+                root = javaContent.getJson(JAVA_DEFAULTS_PATH);
+                providers = root.getAsJsonArray("providers");
+            } else {
+                root = new JsonObject();
+                providers = new JsonArray();
+                root.add("providers", providers);
+            }
+
+            final Set<String> convertedFileNames = new HashSet<>();
+            for (ConvertedFile convertedFile : convertedFiles) {
+                convertedFileNames.add(convertedFile.json.get("file").getAsString());
+            }
+            final JsonArray mergedProviders = new JsonArray();
+            for (JsonElement provider : providers) {
+                if (!convertedFileNames.contains(provider.getAsJsonObject().get("file").getAsString())) {
+                    mergedProviders.add(provider);
+                }
+            }
+            for (ConvertedFile convertedFile : convertedFiles) {
+                javaContent.put(convertedFile.path, convertedFile.data);
+                mergedProviders.add(convertedFile.json);
+            }
+
+            root.add("providers", mergedProviders);
+            javaContent.putJson(JAVA_DEFAULTS_PATH, root);
+        }
+
+        private static class GlyphPage {
+
+            private final ResourcePack.Content content;
+            private final int packIndex;
+            private final int index;
+            private final String name;
+
+            private GlyphPage(final ResourcePack.Content content, final int packIndex, final int index, final String name) {
+                this.content = content;
+                this.packIndex = packIndex;
+                this.index = index;
+                this.name = name;
+            }
+
         }
 
-        javaContent.putJson(javaDefaultsPath, root);
     }
 
 }
@@ -19,6 +19,8 @@ package net.raphimc.viabedrock.protocol.storage;
 
 import com.viaversion.viaversion.api.connection.StoredObject;
 import com.viaversion.viaversion.api.connection.UserConnection;
+import com.viaversion.viaversion.api.minecraft.BlockChangeRecord;
+import com.viaversion.viaversion.api.minecraft.BlockChangeRecord1_16_2;
 import com.viaversion.viaversion.api.minecraft.Position;
 import com.viaversion.viaversion.api.minecraft.blockentity.BlockEntity;
 import com.viaversion.viaversion.api.minecraft.blockentity.BlockEntityImpl;
@@ -35,15 +37,21 @@ import com.viaversion.viaversion.libs.opennbt.tag.builtin.NumberTag;
 import com.viaversion.viaversion.protocols.protocol1_20_3to1_20_2.packet.ClientboundPackets1_20_3;
 import com.viaversion.viaversion.util.CompactArrayUtil;
 import com.viaversion.viaversion.util.MathUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import net.raphimc.viabedrock.ViaBedrock;
 import net.raphimc.viabedrock.api.chunk.BedrockBlockEntity;
 import net.raphimc.viabedrock.api.chunk.BedrockChunk;
 import net.raphimc.viabedrock.api.chunk.BlockEntityWithBlockState;
 import net.raphimc.viabedrock.api.chunk.datapalette.BedrockBlockArray;
 import net.raphimc.viabedrock.api.chunk.datapalette.BedrockDataPalette;
+import net.raphimc.viabedrock.api.chunk.light.LightEngine;
 import net.raphimc.viabedrock.api.chunk.section.BedrockChunkSection;
 import net.raphimc.viabedrock.api.chunk.section.BedrockChunkSectionImpl;
 import net.raphimc.viabedrock.api.model.BedrockBlockState;
+import net.raphimc.viabedrock.api.util.PacketFactory;
+import net.raphimc.viabedrock.platform.ViaBedrockConfig;
 import net.raphimc.viabedrock.protocol.BedrockProtocol;
 import net.raphimc.viabedrock.protocol.ServerboundBedrockPackets;
 import net.raphimc.viabedrock.protocol.model.Position3f;
@@ -53,14 +61,16 @@ import net.raphimc.viabedrock.protocol.rewriter.DimensionIdRewriter;
 import net.raphimc.viabedrock.protocol.types.BedrockTypes;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 // TODO: Feature: Block connections
-// TODO: Feature: Lighting
 public class ChunkTracker extends StoredObject {
 
     private static final byte[] FULL_LIGHT = new byte[2048];
+    private static final int MAX_SECTION_BLOCK_CHANGES = ChunkSection.SIZE / 2; // Bigger section updates are sent by resending the whole chunk
 
     static {
         Arrays.fill(FULL_LIGHT, (byte) 0xFF);
@@ -70,10 +80,15 @@ public class ChunkTracker extends StoredObject {
     private final int minY;
     private final int worldHeight;
     private final Type<Chunk> chunkType;
+    private final byte[] fullLightData;
+    private final LightEngine lightEngine;
 
     private final Object chunkLock = new Object();
     private final Map<Long, BedrockChunk> chunks = new HashMap<>();
     private final Set<Long> dirtyChunks = new HashSet<>();
+    private final Map<Long, IntSet> dirtySections = new HashMap<>();
+    private final Map<Long, byte[]> lightData = new HashMap<>();
+    private CompletableFuture<Void> lightTask = CompletableFuture.completedFuture(null);
 
     private final Object subChunkLock = new Object();
     private final Set<SubChunkPosition> subChunkRequests = new HashSet<>();
@@ -110,6 +125,9 @@ public class ChunkTracker extends StoredObject {
         this.worldHeight = pair.valueInt();
 
         this.chunkType = new ChunkType1_20_2(this.worldHeight >> 4, MathUtil.ceilLog2(BedrockProtocol.MAPPINGS.getJavaBlockStates().size()), MathUtil.ceilLog2(biomes.size()));
+        this.fullLightData = createFullLightData(this.worldHeight >> 4);
+        final ViaBedrockConfig.LightingMode lightingMode = ViaBedrock.getConfig().getLightingMode();
+        this.lightEngine = lightingMode != ViaBedrockConfig.LightingMode.FULL_BRIGHT ? new LightEngine(this.minY, this.worldHeight >> 4, lightingMode == ViaBedrockConfig.LightingMode.FULL) : null;
 
         final ChunkTracker oldChunkTracker = user.get(ChunkTracker.class);
         this.radius = oldChunkTracker != null ? oldChunkTracker.radius : user.get(ClientSettingsStorage.class).getViewDistance();
@@ -155,7 +173,9 @@ public class ChunkTracker extends StoredObject {
     public void unloadChunk(final ChunkPosition chunkPos) throws Exception {
         synchronized (this.chunkLock) {
             this.chunks.remove(chunkPos.chunkKey());
+            this.lightData.remove(chunkPos.chunkKey());
         }
+        this.submitLightTask(lightEngine -> lightEngine.removeChunk(chunkPos.chunkX(), chunkPos.chunkZ()));
         this.getUser().get(EntityTracker.class).removeItemFrame(chunkPos);
 
         final PacketWrapper unloadChunk = PacketWrapper.create(ClientboundPackets1_20_3.UNLOAD_CHUNK, this.getUser());
@@ -271,7 +291,7 @@ public class ChunkTracker extends StoredObject {
             return true;
         }
         synchronized (this.dirtyChunks) {
-            return this.dirtyChunks.contains(chunkPos.chunkKey());
+            return this.dirtyChunks.contains(chunkPos.chunkKey()) || this.dirtySections.containsKey(chunkPos.chunkKey());
         }
     }
 
@@ -320,7 +340,7 @@ public class ChunkTracker extends StoredObject {
         }
     }
 
-    public boolean mergeSubChunk(final int chunkX, final int subChunkY, final int chunkZ, final BedrockChunkSection other, final List<BedrockBlockEntity> blockEntities) {
+    public boolean mergeSubChunk(final int chunkX, final int subChunkY, final int chunkZ, final BedrockChunkSection other, final List<BedrockBlockEntity> blockEntities) throws Exception {
         if (!this.isInLoadDistance(chunkX, chunkZ)) return false;
 
         final SubChunkPosition position = new SubChunkPosition(chunkX, subChunkY, chunkZ);
@@ -338,7 +358,11 @@ public class ChunkTracker extends StoredObject {
             return false;
         }
 
-        final BedrockChunkSection section = chunk.getSections()[subChunkY + Math.abs(this.minY >> 4)];
+        final int sectionIndex = subChunkY + Math.abs(this.minY >> 4);
+        if (chunk.isSentToClient() && chunk.hasClientSection(sectionIndex) && chunk.getClientSectionSnapshot(sectionIndex) == null) { // Remember what the client holds to only send the difference
+            chunk.setClientSectionSnapshot(sectionIndex, this.remapBlockStates(chunk, sectionIndex));
+        }
+        final BedrockChunkSection section = chunk.getSections()[sectionIndex];
         section.mergeWith(this.handleBlockPalette(other));
         section.applyPendingBlockUpdates(this.airId());
         blockEntities.forEach(blockEntity -> chunk.removeBlockEntityAt(blockEntity.position()));
@@ -399,6 +423,7 @@ public class ChunkTracker extends StoredObject {
                 }
 
                 if (javaBlockEntity != null && javaBlockEntity.tag() != null) {
+                    this.updateBlockLight(blockPosition, remappedBlockState);
                     return new IntObjectImmutablePair<>(remappedBlockState, javaBlockEntity);
                 }
             } else if (BlockStateRewriter.TAG_ITEM_FRAME.equals(tag)) {
@@ -406,6 +431,7 @@ public class ChunkTracker extends StoredObject {
             }
         }
 
+        this.updateBlockLight(blockPosition, remappedBlockState);
         return new IntObjectImmutablePair<>(remappedBlockState, null);
     }
 
@@ -421,27 +447,102 @@ public class ChunkTracker extends StoredObject {
         }
     }
 
+    public void sendSubChunkInNextTick(final int chunkX, final int subChunkY, final int chunkZ) {
+        synchronized (this.dirtyChunks) {
+            this.dirtySections.computeIfAbsent(ChunkPosition.chunkKey(chunkX, chunkZ), k -> new IntOpenHashSet()).add(subChunkY + Math.abs(this.minY >> 4));
+        }
+    }
+
     public void sendChunk(final int chunkX, final int chunkZ) throws Exception {
         final BedrockChunk chunk = this.getChunk(chunkX, chunkZ);
         if (chunk == null) {
             return;
         }
         final Chunk remappedChunk = this.remapChunk(chunk);
+        chunk.setSentToClient(true);
+        for (int i = 0; i < remappedChunk.getSections().length; i++) {
+            chunk.setClientSection(i, remappedChunk.getSections()[i].getNonAirBlocksCount() != 0);
+        }
+        chunk.clearClientSectionSnapshots();
+        byte[] lightData;
+        synchronized (this.chunkLock) {
+            lightData = this.lightData.get(ChunkPosition.chunkKey(chunkX, chunkZ));
+        }
+        if (lightData == null) { // Sent until the light engine calculated the real light
+            lightData = this.fullLightData;
+        }
 
         final PacketWrapper wrapper = PacketWrapper.create(ClientboundPackets1_20_3.CHUNK_DATA, this.getUser());
-        final BitSet lightMask = new BitSet();
-        lightMask.set(0, remappedChunk.getSections().length + 2);
         wrapper.write(this.chunkType, remappedChunk); // chunk
-        wrapper.write(Type.LONG_ARRAY_PRIMITIVE, lightMask.toLongArray()); // sky light mask
-        wrapper.write(Type.LONG_ARRAY_PRIMITIVE, new long[0]); // block light mask
-        wrapper.write(Type.LONG_ARRAY_PRIMITIVE, new long[0]); // empty sky light mask
-        wrapper.write(Type.LONG_ARRAY_PRIMITIVE, lightMask.toLongArray()); // empty block light mask
-        wrapper.write(Type.VAR_INT, remappedChunk.getSections().length + 2); // sky light length
-        for (int i = 0; i < remappedChunk.getSections().length + 2; i++) {
-            wrapper.write(Type.BYTE_ARRAY_PRIMITIVE, FULL_LIGHT); // sky light
-        }
-        wrapper.write(Type.VAR_INT, 0); // block light length
+        wrapper.write(Type.REMAINING_BYTES, lightData); // light data
         wrapper.send(BedrockProtocol.class);
+
+        this.submitLightTask(lightEngine -> lightEngine.setChunk(chunkX, chunkZ, remappedChunk.getSections()));
+    }
+
+    public void sendSectionUpdates(final int chunkX, final int chunkZ, final IntSet sectionIndices) throws Exception {
+        final BedrockChunk chunk = this.getChunk(chunkX, chunkZ);
+        if (chunk == null) {
+            return;
+        }
+        if (!chunk.isSentToClient()) {
+            this.sendChunk(chunkX, chunkZ);
+            return;
+        }
+
+        // Sections the client only holds as air are filled for the first time (Terrain streaming), which is sent by resending the whole chunk.
+        // Only small changes to sections the client already holds are sent as block changes, because the client relights every changed block.
+        final List<BlockEntity> blockEntities = new ArrayList<>();
+        final ChunkSection[] remappedSections = new ChunkSection[chunk.getSections().length];
+        final Int2ObjectMap<BlockChangeRecord[]> sectionChanges = new Int2ObjectOpenHashMap<>(sectionIndices.size());
+        for (int sectionIndex : sectionIndices) {
+            final ChunkSection remappedSection = remappedSections[sectionIndex] = new ChunkSectionImpl(false);
+            this.remapBlocks(chunk, sectionIndex, remappedSection, blockEntities);
+            if (!chunk.hasClientSection(sectionIndex)) {
+                if (remappedSection.getNonAirBlocksCount() == 0) continue;
+                this.sendChunk(chunkX, chunkZ);
+                return;
+            }
+            final int[] clientBlockStates = chunk.getClientSectionSnapshot(sectionIndex);
+            if (clientBlockStates == null) {
+                this.sendChunk(chunkX, chunkZ);
+                return;
+            }
+
+            final DataPalette remappedBlockPalette = remappedSection.palette(PaletteType.BLOCKS);
+            final List<BlockChangeRecord> changes = new ArrayList<>();
+            int i = 0;
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        final int javaBlockState = remappedBlockPalette.idAt(x, y, z);
+                        if (javaBlockState != clientBlockStates[i++]) {
+                            changes.add(new BlockChangeRecord1_16_2(x, y, z, javaBlockState));
+                        }
+                    }
+                }
+            }
+            if (changes.size() > MAX_SECTION_BLOCK_CHANGES) {
+                this.sendChunk(chunkX, chunkZ);
+                return;
+            }
+            if (!changes.isEmpty()) {
+                sectionChanges.put(sectionIndex, changes.toArray(new BlockChangeRecord[0]));
+            }
+        }
+
+        for (int sectionIndex : sectionIndices) {
+            chunk.setClientSection(sectionIndex, remappedSections[sectionIndex].getNonAirBlocksCount() != 0);
+            chunk.setClientSectionSnapshot(sectionIndex, null);
+        }
+        for (Int2ObjectMap.Entry<BlockChangeRecord[]> entry : sectionChanges.int2ObjectEntrySet()) {
+            PacketFactory.sendMultiBlockChange(this.getUser(), chunkX, (this.minY >> 4) + entry.getIntKey(), chunkZ, entry.getValue());
+        }
+        for (BlockEntity blockEntity : blockEntities) {
+            final Position position = new Position(chunkX * 16 + blockEntity.sectionX(), blockEntity.y(), chunkZ * 16 + blockEntity.sectionZ());
+            PacketFactory.sendBlockEntityData(this.getUser(), position, blockEntity);
+        }
+        this.submitLightTask(lightEngine -> lightEngine.setChunk(chunkX, chunkZ, remappedSections));
     }
 
     public int getDimensionId() {
@@ -477,7 +578,7 @@ public class ChunkTracker extends StoredObject {
 
     public void tick() throws Exception {
         synchronized (this.dirtyChunks) {
-            if (!this.dirtyChunks.isEmpty()) {
+            if (!this.dirtyChunks.isEmpty() || !this.dirtySections.isEmpty()) {
                 this.getUser().getChannel().eventLoop().submit(() -> {
                     if (!this.getUser().getChannel().isActive()) return;
 
@@ -491,7 +592,18 @@ public class ChunkTracker extends StoredObject {
                                 ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Failed to send chunk " + chunkPos.chunkX() + ", " + chunkPos.chunkZ(), e);
                             }
                         }
+                        for (Map.Entry<Long, IntSet> entry : this.dirtySections.entrySet()) {
+                            if (this.dirtyChunks.contains(entry.getKey())) continue;
+                            final ChunkPosition chunkPos = new ChunkPosition(entry.getKey());
+
+                            try {
+                                this.sendSectionUpdates(chunkPos.chunkX(), chunkPos.chunkZ(), entry.getValue());
+                            } catch (Throwable e) {
+                                ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Failed to send chunk section updates " + chunkPos.chunkX() + ", " + chunkPos.chunkZ(), e);
+                            }
+                        }
                         this.dirtyChunks.clear();
+                        this.dirtySections.clear();
                     }
                 });
             }
@@ -523,157 +635,111 @@ public class ChunkTracker extends StoredObject {
         }
     }
 
-    private Chunk remapChunk(final BedrockChunk chunk) throws Exception {
-        final BlockStateRewriter blockStateRewriter = this.getUser().get(BlockStateRewriter.class);
-        final int airId = this.airId();
+    private void updateBlockLight(final Position blockPosition, final int javaBlockState) {
+        final BedrockChunk chunk = this.getChunk(blockPosition.x() >> 4, blockPosition.z() >> 4);
+        if (chunk == null || !chunk.isSentToClient()) return; // The light will be calculated once the chunk is sent
+
+        this.submitLightTask(lightEngine -> lightEngine.setBlock(blockPosition.x(), blockPosition.y(), blockPosition.z(), javaBlockState));
+    }
+
+    /**
+     * Runs a task on the light engine outside of the netty event loop and sends the resulting light updates to the client.
+     * Tasks of the same chunk tracker are executed sequentially.
+     *
+     * @param task The task to run
+     */
+    private void submitLightTask(final Consumer<LightEngine> task) {
+        if (this.lightEngine == null) return;
+
+        synchronized (this.lightEngine) {
+            this.lightTask = this.lightTask.thenRunAsync(() -> {
+                try {
+                    task.accept(this.lightEngine);
+                    final Map<Long, byte[]> changedLightData = new HashMap<>();
+                    for (long chunkKey : this.lightEngine.collectChangedChunks()) {
+                        changedLightData.put(chunkKey, this.lightEngine.writeLightData(chunkKey));
+                    }
+                    if (!changedLightData.isEmpty()) {
+                        this.getUser().getChannel().eventLoop().execute(() -> this.sendLightUpdates(changedLightData));
+                    }
+                } catch (Throwable e) {
+                    ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Failed to calculate light", e);
+                }
+            });
+        }
+    }
+
+    private void sendLightUpdates(final Map<Long, byte[]> changedLightData) {
+        if (!this.getUser().getChannel().isActive() || this.getUser().get(ChunkTracker.class) != this) return;
+
+        for (Map.Entry<Long, byte[]> entry : changedLightData.entrySet()) {
+            final BedrockChunk chunk;
+            synchronized (this.chunkLock) {
+                chunk = this.chunks.get(entry.getKey());
+                if (chunk == null) continue;
+                this.lightData.put(entry.getKey(), entry.getValue());
+            }
+            if (!chunk.isSentToClient()) continue;
+
+            try {
+                final PacketWrapper updateLight = PacketWrapper.create(ClientboundPackets1_20_3.UPDATE_LIGHT, this.getUser());
+                updateLight.write(Type.VAR_INT, chunk.getX()); // chunk x
+                updateLight.write(Type.VAR_INT, chunk.getZ()); // chunk z
+                updateLight.write(Type.REMAINING_BYTES, entry.getValue()); // light data
+                updateLight.send(BedrockProtocol.class);
+            } catch (Throwable e) {
+                ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Failed to send light update " + chunk.getX() + ", " + chunk.getZ(), e);
+            }
+        }
+    }
 
+    private Chunk remapChunk(final BedrockChunk chunk) throws Exception {
         final Chunk remappedChunk = new Chunk1_18(chunk.getX(), chunk.getZ(), new ChunkSection[chunk.getSections().length], new CompoundTag(), new ArrayList<>());
 
         final BedrockChunkSection[] bedrockSections = chunk.getSections();
         final ChunkSection[] remappedSections = remappedChunk.getSections();
+        DataPalette prevBiomePalette = null;
+        DataPalette prevRemappedBiomePalette = null;
+        int[] biomeCounts = new int[256];
         for (int idx = 0; idx < bedrockSections.length; idx++) {
             final BedrockChunkSection bedrockSection = bedrockSections[idx];
-            final List<DataPalette> blockPalettes = bedrockSection.palettes(PaletteType.BLOCKS);
             final ChunkSection remappedSection = remappedSections[idx] = new ChunkSectionImpl(false);
-            final DataPalette remappedBlockPalette = remappedSection.palette(PaletteType.BLOCKS);
-
-            if (!blockPalettes.isEmpty()) {
-                final DataPalette layer0 = blockPalettes.get(0);
-                if (layer0.size() == 1) {
-                    remappedBlockPalette.addId(layer0.idByIndex(0));
-                } else {
-                    this.transferPaletteData(layer0, remappedBlockPalette);
-                }
-
-                final String[] paletteIndexBlockStateTags = new String[remappedBlockPalette.size()];
-                for (int i = 0; i < remappedBlockPalette.size(); i++) {
-                    final int bedrockBlockState = remappedBlockPalette.idByIndex(i);
-                    int javaBlockState = blockStateRewriter.javaId(bedrockBlockState);
-                    if (javaBlockState == -1) {
-                        ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing block state: " + bedrockBlockState);
-                        javaBlockState = 0;
-                    }
-                    remappedBlockPalette.setIdByIndex(i, javaBlockState);
-
-                    paletteIndexBlockStateTags[i] = blockStateRewriter.tag(bedrockBlockState);
-                }
-
-                int nonAirBlockCount = 0;
-                for (int x = 0; x < 16; x++) {
-                    for (int y = 0; y < 16; y++) {
-                        for (int z = 0; z < 16; z++) {
-                            final int paletteIndex = remappedBlockPalette.paletteIndexAt(remappedBlockPalette.index(x, y, z));
-                            final int javaBlockState = remappedBlockPalette.idByIndex(paletteIndex);
-                            if (javaBlockState != 0) {
-                                nonAirBlockCount++;
-                            }
-
-                            final String tag = paletteIndexBlockStateTags[paletteIndex];
-                            if (tag == null) continue;
-
-                            final int absY = this.minY + idx * 16 + y;
-                            final Position position = new Position(chunk.getX() * 16 + x, absY, chunk.getZ() * 16 + z);
-                            if (BlockEntityRewriter.isJavaBlockEntity(tag)) {
-                                final BedrockBlockEntity bedrockBlockEntity = chunk.getBlockEntityAt(position);
-                                if (bedrockBlockEntity != null) {
-                                    final BlockEntity javaBlockEntity = BlockEntityRewriter.toJava(this.getUser(), layer0.idAt(x, y, z), bedrockBlockEntity);
-                                    if (javaBlockEntity instanceof BlockEntityWithBlockState) {
-                                        final BlockEntityWithBlockState blockEntityWithBlockState = (BlockEntityWithBlockState) javaBlockEntity;
-                                        if (blockEntityWithBlockState.hasBlockState()) {
-                                            remappedBlockPalette.setIdAt(x, y, z, blockEntityWithBlockState.blockState());
-                                        }
-                                    }
-                                    if (javaBlockEntity != null && javaBlockEntity.tag() != null) {
-                                        remappedChunk.blockEntities().add(javaBlockEntity);
-                                    }
-                                } else if (BedrockProtocol.MAPPINGS.getJavaBlockEntities().containsKey(tag)) {
-                                    final int javaType = BedrockProtocol.MAPPINGS.getJavaBlockEntities().get(tag);
-                                    final BlockEntity javaBlockEntity = new BlockEntityImpl(BlockEntity.pack(x, z), (short) absY, javaType, new CompoundTag());
-                                    remappedChunk.blockEntities().add(javaBlockEntity);
-                                }
-                            } else if (BlockStateRewriter.TAG_ITEM_FRAME.equals(tag)) {
-                                this.getUser().get(EntityTracker.class).spawnItemFrame(position, blockStateRewriter.blockState(layer0.idAt(x, y, z)));
-                            }
-                        }
-                    }
-                }
-                remappedSection.setNonAirBlocksCount(nonAirBlockCount);
-
-                if (blockPalettes.size() > 1) {
-                    final DataPalette layer1 = blockPalettes.get(1);
-                    if (layer1.size() != 1 || layer1.idByIndex(0) != airId) {
-                        for (int x = 0; x < 16; x++) {
-                            for (int y = 0; y < 16; y++) {
-                                for (int z = 0; z < 16; z++) {
-                                    final int prevBlockState = layer0.idAt(x, y, z);
-                                    if (prevBlockState == airId) continue;
-                                    final int blockState = layer1.idAt(x, y, z);
-                                    if (blockState == airId) continue;
-                                    final int javaBlockState = remappedBlockPalette.idAt(x, y, z);
-
-                                    if (BlockStateRewriter.TAG_WATER.equals(blockStateRewriter.tag(blockState))) { // Waterlogging
-                                        final int remappedBlockState = blockStateRewriter.waterlog(javaBlockState);
-                                        if (remappedBlockState == -1) {
-                                            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing waterlogged block state: " + prevBlockState);
-                                        } else {
-                                            remappedBlockPalette.setIdAt(x, y, z, remappedBlockState);
-                                        }
-                                    } else {
-                                        ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Invalid layer 2 block state. L1: " + prevBlockState + ", L2: " + blockState);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            } else {
-                remappedBlockPalette.addId(0);
-            }
+            this.remapBlocks(chunk, idx, remappedSection, remappedChunk.blockEntities());
 
             final DataPalette biomePalette = bedrockSection.palette(PaletteType.BIOMES);
             final DataPalette remappedBiomePalette = new DataPaletteImpl(ChunkSection.BIOME_SIZE);
             remappedSection.addPalette(PaletteType.BIOMES, remappedBiomePalette);
 
             if (biomePalette != null) {
-                if (biomePalette.size() == 1) {
-                    remappedBiomePalette.addId(biomePalette.idByIndex(0));
+                if (prevBiomePalette != null && this.hasSameBiomes(prevBiomePalette, biomePalette)) { // Bedrock sends "same as previous" biome palettes as copies of the previous one
+                    for (int i = 0; i < ChunkSection.BIOME_SIZE; i++) {
+                        remappedBiomePalette.setIdAt(i, prevRemappedBiomePalette.idAt(i));
+                    }
                 } else {
-                    for (int x = 0; x < 4; x++) {
-                        for (int y = 0; y < 4; y++) {
-                            for (int z = 0; z < 4; z++) {
-                                final Int2IntMap subBiomes = new Int2IntOpenHashMap();
-                                int maxBiomeId = -1;
-                                int maxValue = -1;
-                                for (int subX = 0; subX < 4; subX++) {
-                                    for (int subY = 0; subY < 4; subY++) {
-                                        for (int subZ = 0; subZ < 4; subZ++) {
-                                            final int biomeId = biomePalette.idAt(x * 4 + subX, y * 4 + subY, z * 4 + subZ);
-                                            final int value = subBiomes.getOrDefault(biomeId, 0) + 1;
-                                            subBiomes.put(biomeId, value);
-                                            if (value > maxValue) {
-                                                maxBiomeId = biomeId;
-                                                maxValue = value;
-                                            }
-                                        }
-                                    }
-                                }
-                                remappedBiomePalette.setIdAt(x, y, z, maxBiomeId);
-                            }
+                    if (biomePalette.size() == 1) {
+                        remappedBiomePalette.addId(biomePalette.idByIndex(0));
+                    } else {
+                        if (biomeCounts.length < biomePalette.size()) {
+                            biomeCounts = new int[biomePalette.size()];
                         }
+                        this.downsampleBiomes(biomePalette, remappedBiomePalette, biomeCounts);
                     }
-                }
 
-                for (int i = 0; i < remappedBiomePalette.size(); i++) {
-                    final int bedrockBiome = remappedBiomePalette.idByIndex(i);
-                    int javaBiome = bedrockBiome + 1;
-                    if (!BedrockProtocol.MAPPINGS.getBedrockBiomes().inverse().containsKey(bedrockBiome)) {
-                        ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing biome: " + bedrockBiome);
-                        javaBiome = 0;
+                    for (int i = 0; i < remappedBiomePalette.size(); i++) {
+                        final int bedrockBiome = remappedBiomePalette.idByIndex(i);
+                        int javaBiome = bedrockBiome + 1;
+                        if (!BedrockProtocol.MAPPINGS.getBedrockBiomes().inverse().containsKey(bedrockBiome)) {
+                            ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing biome: " + bedrockBiome);
+                            javaBiome = 0;
+                        }
+                        remappedBiomePalette.setIdByIndex(i, javaBiome);
                     }
-                    remappedBiomePalette.setIdByIndex(i, javaBiome);
                 }
+                prevBiomePalette = biomePalette;
+                prevRemappedBiomePalette = remappedBiomePalette;
             } else {
                 remappedBiomePalette.addId(0);
+                prevBiomePalette = null;
             }
         }
 
@@ -722,6 +788,182 @@ public class ChunkTracker extends StoredObject {
         return remappedChunk;
     }
 
+    /**
+     * Downsamples the 16x16x16 bedrock biomes to 4x4x4 java biomes by picking the most common biome of each cell.
+     *
+     * @param source The bedrock biome palette
+     * @param target The java biome palette
+     * @param counts Scratch array for counting the biomes. Must be at least as large as the source palette and filled with zeros
+     */
+    private void downsampleBiomes(final DataPalette source, final DataPalette target, final int[] counts) {
+        final boolean usePaletteIndices = source instanceof BedrockDataPalette;
+        final int[] cellValues = new int[4 * 4 * 4];
+        for (int x = 0; x < 4; x++) {
+            for (int y = 0; y < 4; y++) {
+                for (int z = 0; z < 4; z++) {
+                    boolean uniform = true;
+                    int i = 0;
+                    for (int subX = 0; subX < 4; subX++) {
+                        for (int subY = 0; subY < 4; subY++) {
+                            for (int subZ = 0; subZ < 4; subZ++) {
+                                final int sectionIndex = source.index(x * 4 + subX, y * 4 + subY, z * 4 + subZ);
+                                final int value = usePaletteIndices ? source.paletteIndexAt(sectionIndex) : source.idAt(sectionIndex);
+                                cellValues[i++] = value;
+                                uniform &= value == cellValues[0];
+                            }
+                        }
+                    }
+
+                    int maxValue = cellValues[0];
+                    if (!uniform) {
+                        int maxCount = 0;
+                        for (int value : cellValues) {
+                            final int count = ++counts[value];
+                            if (count > maxCount) {
+                                maxValue = value;
+                                maxCount = count;
+                            }
+                        }
+                        for (int value : cellValues) {
+                            counts[value] = 0;
+                        }
+                    }
+                    target.setIdAt(x, y, z, usePaletteIndices ? source.idByIndex(maxValue) : maxValue);
+                }
+            }
+        }
+    }
+
+    private boolean hasSameBiomes(final DataPalette a, final DataPalette b) {
+        if (a == b) return true;
+        if (!(a instanceof BedrockDataPalette) || !(b instanceof BedrockDataPalette)) return false;
+
+        final BedrockDataPalette paletteA = (BedrockDataPalette) a;
+        final BedrockDataPalette paletteB = (BedrockDataPalette) b;
+        if (paletteA.size() != paletteB.size()) return false;
+        if (paletteA.getBitArray().getVersion() != paletteB.getBitArray().getVersion()) return false;
+        for (int i = 0; i < paletteA.size(); i++) {
+            if (paletteA.idByIndex(i) != paletteB.idByIndex(i)) return false;
+        }
+        return Arrays.equals(paletteA.getBitArray().getWords(), paletteB.getBitArray().getWords());
+    }
+
+    private int[] remapBlockStates(final BedrockChunk chunk, final int idx) throws Exception {
+        final ChunkSection remappedSection = new ChunkSectionImpl(false);
+        this.remapBlocks(chunk, idx, remappedSection, new ArrayList<>());
+        final DataPalette remappedBlockPalette = remappedSection.palette(PaletteType.BLOCKS);
+        final int[] blockStates = new int[ChunkSection.SIZE];
+        int i = 0;
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    blockStates[i++] = remappedBlockPalette.idAt(x, y, z);
+                }
+            }
+        }
+        return blockStates;
+    }
+
+    private void remapBlocks(final BedrockChunk chunk, final int idx, final ChunkSection remappedSection, final List<BlockEntity> blockEntities) throws Exception {
+        final BlockStateRewriter blockStateRewriter = this.getUser().get(BlockStateRewriter.class);
+        final int airId = this.airId();
+        final List<DataPalette> blockPalettes = chunk.getSections()[idx].palettes(PaletteType.BLOCKS);
+        final DataPalette remappedBlockPalette = remappedSection.palette(PaletteType.BLOCKS);
+
+        if (!blockPalettes.isEmpty()) {
+            final DataPalette layer0 = blockPalettes.get(0);
+            if (layer0.size() == 1) {
+                remappedBlockPalette.addId(layer0.idByIndex(0));
+            } else {
+                this.transferPaletteData(layer0, remappedBlockPalette);
+            }
+
+            final String[] paletteIndexBlockStateTags = new String[remappedBlockPalette.size()];
+            for (int i = 0; i < remappedBlockPalette.size(); i++) {
+                final int bedrockBlockState = remappedBlockPalette.idByIndex(i);
+                int javaBlockState = blockStateRewriter.javaId(bedrockBlockState);
+                if (javaBlockState == -1) {
+                    ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing block state: " + bedrockBlockState);
+                    javaBlockState = 0;
+                }
+                remappedBlockPalette.setIdByIndex(i, javaBlockState);
+
+                paletteIndexBlockStateTags[i] = blockStateRewriter.tag(bedrockBlockState);
+            }
+
+            int nonAirBlockCount = 0;
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        final int paletteIndex = remappedBlockPalette.paletteIndexAt(remappedBlockPalette.index(x, y, z));
+                        final int javaBlockState = remappedBlockPalette.idByIndex(paletteIndex);
+                        if (javaBlockState != 0) {
+                            nonAirBlockCount++;
+                        }
+
+                        final String tag = paletteIndexBlockStateTags[paletteIndex];
+                        if (tag == null) continue;
+
+                        final int absY = this.minY + idx * 16 + y;
+                        final Position position = new Position(chunk.getX() * 16 + x, absY, chunk.getZ() * 16 + z);
+                        if (BlockEntityRewriter.isJavaBlockEntity(tag)) {
+                            final BedrockBlockEntity bedrockBlockEntity = chunk.getBlockEntityAt(position);
+                            if (bedrockBlockEntity != null) {
+                                final BlockEntity javaBlockEntity = BlockEntityRewriter.toJava(this.getUser(), layer0.idAt(x, y, z), bedrockBlockEntity);
+                                if (javaBlockEntity instanceof BlockEntityWithBlockState) {
+                                    final BlockEntityWithBlockState blockEntityWithBlockState = (BlockEntityWithBlockState) javaBlockEntity;
+                                    if (blockEntityWithBlockState.hasBlockState()) {
+                                        remappedBlockPalette.setIdAt(x, y, z, blockEntityWithBlockState.blockState());
+                                    }
+                                }
+                                if (javaBlockEntity != null && javaBlockEntity.tag() != null) {
+                                    blockEntities.add(javaBlockEntity);
+                                }
+                            } else if (BedrockProtocol.MAPPINGS.getJavaBlockEntities().containsKey(tag)) {
+                                final int javaType = BedrockProtocol.MAPPINGS.getJavaBlockEntities().get(tag);
+                                final BlockEntity javaBlockEntity = new BlockEntityImpl(BlockEntity.pack(x, z), (short) absY, javaType, new CompoundTag());
+                                blockEntities.add(javaBlockEntity);
+                            }
+                        } else if (BlockStateRewriter.TAG_ITEM_FRAME.equals(tag)) {
+                            this.getUser().get(EntityTracker.class).spawnItemFrame(position, blockStateRewriter.blockState(layer0.idAt(x, y, z)));
+                        }
+                    }
+                }
+            }
+            remappedSection.setNonAirBlocksCount(nonAirBlockCount);
+
+            if (blockPalettes.size() > 1) {
+                final DataPalette layer1 = blockPalettes.get(1);
+                if (layer1.size() != 1 || layer1.idByIndex(0) != airId) {
+                    for (int x = 0; x < 16; x++) {
+                        for (int y = 0; y < 16; y++) {
+                            for (int z = 0; z < 16; z++) {
+                                final int prevBlockState = layer0.idAt(x, y, z);
+                                if (prevBlockState == airId) continue;
+                                final int blockState = layer1.idAt(x, y, z);
+                                if (blockState == airId) continue;
+                                final int javaBlockState = remappedBlockPalette.idAt(x, y, z);
+
+                                if (BlockStateRewriter.TAG_WATER.equals(blockStateRewriter.tag(blockState))) { // Waterlogging
+                                    final int remappedBlockState = blockStateRewriter.waterlog(javaBlockState);
+                                    if (remappedBlockState == -1) {
+                                        ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Missing waterlogged block state: " + prevBlockState);
+                                    } else {
+                                        remappedBlockPalette.setIdAt(x, y, z, remappedBlockState);
+                                    }
+                                } else {
+                                    ViaBedrock.getPlatform().getLogger().log(Level.WARNING, "Invalid layer 2 block state. L1: " + prevBlockState + ", L2: " + blockState);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } else {
+            remappedBlockPalette.addId(0);
+        }
+    }
+
     private void resolvePersistentIds(final BedrockChunkSection bedrockSection) {
         final BlockStateRewriter blockStateRewriter = this.getUser().get(BlockStateRewriter.class);
 
@@ -783,6 +1025,35 @@ public class ChunkTracker extends StoredObject {
         }
     }
 
+    /**
+     * Serializes the light data of a chunk which has full sky light and no block light.
+     *
+     * @param sectionCount The amount of sections in the chunk
+     * @return The serialized light data
+     */
+    private static byte[] createFullLightData(final int sectionCount) {
+        final BitSet lightMask = new BitSet();
+        lightMask.set(0, sectionCount + 2);
+
+        final ByteBuf lightData = Unpooled.buffer();
+        try {
+            Type.LONG_ARRAY_PRIMITIVE.write(lightData, lightMask.toLongArray()); // sky light mask
+            Type.LONG_ARRAY_PRIMITIVE.write(lightData, new long[0]); // block light mask
+            Type.LONG_ARRAY_PRIMITIVE.write(lightData, new long[0]); // empty sky light mask
+            Type.LONG_ARRAY_PRIMITIVE.write(lightData, lightMask.toLongArray()); // empty block light mask
+            Type.VAR_INT.writePrimitive(lightData, sectionCount + 2); // sky light length
+            for (int i = 0; i < sectionCount + 2; i++) {
+                Type.BYTE_ARRAY_PRIMITIVE.write(lightData, FULL_LIGHT); // sky light
+            }
+            Type.VAR_INT.writePrimitive(lightData, 0); // block light length
+            return ByteBufUtil.getBytes(lightData);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to create light data", e);
+        } finally {
+            lightData.release();
+        }
+    }
+
     private static class SubChunkPosition {
 
         private final int chunkX;
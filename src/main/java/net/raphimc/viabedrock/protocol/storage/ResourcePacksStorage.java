@@ -19,22 +19,30 @@ package net.raphimc.viabedrock.protocol.storage;
 
 import com.viaversion.viaversion.api.connection.StorableObject;
 import net.lenni0451.mcstructs_bedrock.text.utils.BedrockTranslator;
+import net.raphimc.viabedrock.ViaBedrock;
 import net.raphimc.viabedrock.api.model.ResourcePack;
 import net.raphimc.viabedrock.protocol.BedrockProtocol;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 public class ResourcePacksStorage implements StorableObject {
 
     private final Map<UUID, ResourcePack> packs = new HashMap<>();
     private final Set<UUID> preloadedPacks = new HashSet<>();
+    private final Set<UUID> sharedPacks = new HashSet<>();
     private final List<UUID> resourcePackStack = new ArrayList<>();
     private final List<UUID> behaviourPackStack = new ArrayList<>();
+    private final CompletableFuture<Void> loadingFuture = new CompletableFuture<>();
 
     private boolean completedTransfer;
     private boolean javaClientWaitingForPack;
     private boolean loadedOnJavaClient;
+    private String javaPackOfferKey;
+    private String advertisedJavaPackHash = "";
+    private UUID javaPackId;
+    private String javaPackUrl;
 
     private Map<String, String> translations;
 
@@ -66,6 +74,22 @@ public class ResourcePacksStorage implements StorableObject {
         return this.preloadedPacks.contains(packId);
     }
 
+    /**
+     * Marks a pack as using shared content from the {@link net.raphimc.viabedrock.api.model.ResourcePackStore}.
+     *
+     * @param packId The pack id
+     */
+    public void addSharedPack(final UUID packId) {
+        this.sharedPacks.add(packId);
+    }
+
+    public void releaseSharedPacks() {
+        for (UUID packId : this.sharedPacks) {
+            ViaBedrock.getResourcePackStore().release(this.packs.get(packId));
+        }
+        this.sharedPacks.clear();
+    }
+
     public void addPreloadedPack(final ResourcePack pack) {
         this.packs.put(pack.packId(), pack);
         this.preloadedPacks.add(pack.packId());
@@ -102,6 +126,7 @@ public class ResourcePacksStorage implements StorableObject {
             return true;
         });
         this.translations = Collections.unmodifiableMap(this.translations);
+        this.loadingFuture.complete(null);
     }
 
     public Function<String, String> getTranslationLookup() {
@@ -137,10 +162,52 @@ public class ResourcePacksStorage implements StorableObject {
         this.loadedOnJavaClient = true;
     }
 
+    public String getJavaPackOfferKey() {
+        return this.javaPackOfferKey;
+    }
+
+    public void setJavaPackOfferKey(final String javaPackOfferKey) {
+        this.javaPackOfferKey = javaPackOfferKey;
+    }
+
+    public String getAdvertisedJavaPackHash() {
+        return this.advertisedJavaPackHash;
+    }
+
+    public void setAdvertisedJavaPackHash(final String advertisedJavaPackHash) {
+        this.advertisedJavaPackHash = advertisedJavaPackHash;
+    }
+
+    /**
+     * @return The pack id of the latest resource pack push. Statuses for other pack ids belong to pushes which have been replaced.
+     */
+    public UUID getJavaPackId() {
+        return this.javaPackId;
+    }
+
+    public void setJavaPackId(final UUID javaPackId) {
+        this.javaPackId = javaPackId;
+    }
+
+    public String getJavaPackUrl() {
+        return this.javaPackUrl;
+    }
+
+    public void setJavaPackUrl(final String javaPackUrl) {
+        this.javaPackUrl = javaPackUrl;
+    }
+
     public boolean hasFinishedLoading() {
         return this.translations != null;
     }
 
+    /**
+     * @return A future which is completed once the pack stack is known and all packs have been loaded
+     */
+    public CompletableFuture<Void> getLoadingFuture() {
+        return this.loadingFuture;
+    }
+
     public Map<String, String> getTranslations() {
         return this.translations;
     }